@@ -30,33 +30,37 @@
 
 package com.conf.nacos.dns;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.SocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.Optional;
-import java.util.concurrent.Executor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
-import com.alibaba.nacos.common.executor.ExecutorFactory;
-import com.alibaba.nacos.common.executor.NameThreadFactory;
 import com.alibaba.nacos.common.utils.ExceptionUtil;
+import com.alibaba.nacos.common.utils.StringUtils;
+import com.conf.nacos.dns.codec.MessageReader;
+import com.conf.nacos.dns.codec.MessageWriter;
+import com.conf.nacos.dns.constants.AnswerMode;
 import com.conf.nacos.dns.constants.Code;
 import com.conf.nacos.dns.constants.Constants;
 import com.conf.nacos.dns.exception.NacosDnsException;
-import com.conf.nacos.dns.pojo.InstanceRecord;
+import com.conf.nacos.dns.response.InstanceAnswers;
+import com.conf.nacos.dns.transport.Packet;
+import com.conf.nacos.dns.transport.PacketPool;
+import com.conf.nacos.dns.transport.TcpReactor;
+import com.conf.nacos.dns.transport.UdpReactor;
+import com.conf.nacos.dns.transport.WorkerPool;
+import com.conf.nacos.dns.upstream.UpstreamResolver;
+import com.conf.nacos.dns.utils.DnsWireUtils;
 import com.conf.nacos.dns.utils.IPUtils;
+import com.conf.nacos.dns.utils.SocketUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xbill.DNS.AAAARecord;
-import org.xbill.DNS.ARecord;
-import org.xbill.DNS.Message;
-import org.xbill.DNS.NULLRecord;
-import org.xbill.DNS.Record;
-import org.xbill.DNS.Section;
 
 /**
  * DNS server
@@ -67,22 +71,46 @@ public class DnsServer {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(DnsServer.class);
 
+	private static final int MAX_TCP_LENGTH = 0xffff;
+
 	private final NacosDnsCore nacosDnsCore;
 
 	private final String backendDnsServer;
 
-	private final Executor executor = ExecutorFactory.newFixExecutorService(
-			DnsServer.class.getCanonicalName(),
-			Runtime.getRuntime().availableProcessors(),
-			new NameThreadFactory("com.conf.nacos.dns.worker"));
+	private final UpstreamResolver upstreamResolver;
+
+	private final WorkerPool workerPool;
 
 	private final int bufferSize;
 
-	private final ThreadLocal<ByteBuffer> bufferPool;
+	private final int bufferPoolSize;
+
+	private final int ednsPayloadSize;
+
+	/**
+	 * 1 unless the answer mode is MULTIPLE.
+	 */
+	private final int maxAnswers;
+
+	/**
+	 * SRV clients weigh the targets themselves, they get every instance up to
+	 * {@link NacosDnsConfig#getMaxAnswers()} in either answer mode.
+	 */
+	private final int maxSrvAnswers;
+
+	private final List<UdpReactor> reactors = new ArrayList<>();
+
+	private final List<Thread> reactorThreads = new ArrayList<>();
+
+	private final TcpConfig tcpConfig;
 
-	private DatagramChannel serverChannel;
+	private final List<TcpReactor> tcpReactors = new ArrayList<>();
 
-	private Selector selector = null;
+	private final List<ListenConfig> listen;
+
+	private final PrewarmConfig prewarm;
+
+	private int reactorCount;
 
 	private boolean perfIPv6 = false;
 
@@ -92,11 +120,22 @@ public class DnsServer {
 		try {
 			long startTime = System.currentTimeMillis();
 			this.bufferSize = config.getBufferSize();
-			this.bufferPool = ThreadLocal
-					.withInitial(() -> ByteBuffer.allocate(bufferSize));
+			this.bufferPoolSize = config.getBufferPoolSize();
+			this.ednsPayloadSize = Math.max(DnsWireUtils.MAX_UDP_LENGTH,
+					Math.min(config.getEdnsPayloadSize(), bufferSize));
 			this.backendDnsServer = config.getBackendDns();
+			this.reactorCount = Math.max(1, config.getReactorCount());
+			this.tcpConfig = config.getTcp();
+			this.listen = config.getListen();
+			this.prewarm = config.getPrewarm();
+			this.maxAnswers = config.getAnswerMode() == AnswerMode.MULTIPLE
+					? Math.max(1, config.getMaxAnswers())
+					: 1;
+			this.maxSrvAnswers = Math.max(1, config.getMaxAnswers());
+			this.workerPool = new WorkerPool(config.getWorker(), this::handler);
 			this.init();
 			this.perfIPv6 = config.isPerfIPv6();
+			this.upstreamResolver = createUpstreamResolver(config.getUpstream());
 			nacosDnsCore = new NacosDnsCore(config);
 			LOGGER.info("dns-server already initialized, spend {} ms",
 					(System.currentTimeMillis() - startTime));
@@ -106,136 +145,467 @@ public class DnsServer {
 		}
 	}
 
+	private UpstreamResolver createUpstreamResolver(final UpstreamConfig upstream)
+			throws IOException {
+		if (StringUtils.isBlank(backendDnsServer)) {
+			LOGGER.warn("backendDns is not configured, queries missing nacos will fail");
+			return null;
+		}
+		final List<InetSocketAddress> backends;
+		try {
+			backends = IPUtils.toSocketAddresses(backendDnsServer, Constants.DNS_PORT);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new IllegalArgumentException("backendDns " + ex.getMessage(), ex);
+		}
+		return new UpstreamResolver(backends, upstream, bufferSize);
+	}
+
 	public static DnsServer create(NacosDnsConfig config) throws NacosDnsException {
 		return new DnsServer(config);
 	}
 
 	private void init() {
+		if (reactorCount > 1 && !SocketUtils.isReusePortAvailable()) {
+			LOGGER.warn("SO_REUSEPORT is not available on this JDK or platform, "
+					+ "fall back to a single reactor");
+			reactorCount = 1;
+		}
+		if (Objects.isNull(listen) || listen.isEmpty()) {
+			throw new NacosDnsException(Code.CREATE_DNS_SERVER_FAILED,
+					new IllegalArgumentException("no listen endpoint is configured"));
+		}
 		AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
 			try {
-				// 192.168.31.1
-				selector = Selector.open();
-				serverChannel = DatagramChannel.open();
-				serverChannel.socket()
-						.bind(new InetSocketAddress("127.0.0.1", Constants.DNS_PORT));
-				serverChannel.configureBlocking(false);
-				serverChannel.register(selector, SelectionKey.OP_READ);
+				// every endpoint gets its own reactors, they share the workers
+				for (ListenConfig endpoint : listen) {
+					if (endpoint.getProtocol().isUdp()) {
+						final boolean reusePort = reactorCount > 1 || endpoint.isReusePort();
+						for (int i = 0; i < reactorCount; i++) {
+							reactors.add(new UdpReactor(reactors.size(), endpoint, reusePort,
+									new PacketPool(bufferPoolSize, bufferSize),
+									this::answerInline, workerPool));
+						}
+					}
+					if (endpoint.getProtocol().isTcp() && tcpConfig.isEnabled()) {
+						tcpReactors.add(new TcpReactor(endpoint,
+								tcpConfig.getMaxConnections(), tcpConfig.getIdleTimeout(),
+								tcpConfig.getMaxPipelined(),
+								new PacketPool(tcpConfig.getBufferPoolSize(), MAX_TCP_LENGTH),
+								this::answerInline, workerPool));
+					}
+					LOGGER.info("listen on {}:{} over {}", endpoint.getAddress(),
+							endpoint.getPort(), endpoint.getProtocol());
+				}
 			}
 			catch (Throwable ex) {
+				reactors.forEach(UdpReactor::shutdown);
+				tcpReactors.forEach(TcpReactor::shutdown);
 				throw new NacosDnsException(Code.CREATE_DNS_SERVER_FAILED, ex);
 			}
 			return null;
 		});
 	}
 
-	public void start() {
-		final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-		for (;;) {
-
+	/**
+	 * Pre-warm the nacos services, then start every reactor and block until all of them
+	 * have stopped. Queries arriving during the pre-warm wait in the socket buffers. When
+	 * services were restored from the snapshot they are answered right away, the
+	 * pre-warm then runs in the background.
+	 *
+	 * @throws InterruptedException interrupted while waiting for the reactors
+	 */
+	public void start() throws InterruptedException {
+		if (prewarm.isEnabled() && !shutdown) {
+			if (nacosDnsCore.getRestoredCount() > 0) {
+				final Thread thread = new Thread(
+						() -> nacosDnsCore.prewarm(prewarm.getTimeout()),
+						"com.conf.nacos.dns.prewarm");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			else {
+				nacosDnsCore.prewarm(prewarm.getTimeout());
+			}
+		}
+		synchronized (reactorThreads) {
 			if (shutdown) {
 				return;
 			}
-
-			try {
-				selector.select();
-				for (SelectionKey key : selector.selectedKeys()) {
-					if (key.isReadable()) {
-						buffer.clear();
-						SocketAddress client = serverChannel.receive(buffer);
-						buffer.flip();
-						byte[] requestData = new byte[buffer.limit()];
-						buffer.get(requestData, 0, requestData.length);
-						executor.execute(() -> handler(requestData, client));
-					}
-				}
+			for (UdpReactor reactor : reactors) {
+				Thread thread = new Thread(reactor,
+						"com.conf.nacos.dns.reactor-" + reactor.getIndex());
+				reactorThreads.add(thread);
+				thread.start();
 			}
-			catch (Throwable ex) {
-				LOGGER.error("handler client request has error : {}",
-						ExceptionUtil.getStackTrace(ex));
+			for (int i = 0; i < tcpReactors.size(); i++) {
+				Thread thread = new Thread(tcpReactors.get(i),
+						"com.conf.nacos.dns.tcp-reactor-" + i);
+				reactorThreads.add(thread);
+				thread.start();
 			}
 		}
+		LOGGER.info("dns-server started with {} udp reactor(s), {} tcp reactor(s)",
+				reactors.size(), tcpReactors.size());
+		for (Thread thread : reactorThreads) {
+			thread.join();
+		}
 	}
 
-	private void handler(final byte[] data, final SocketAddress client) {
-		final ByteBuffer buffer = bufferPool.get();
-		buffer.clear();
+	/**
+	 * Answer on the reactor thread when the service is already cached, the lookup is a
+	 * map read and a balancer pick, nothing here may call nacos or the upstream.
+	 */
+	private boolean answerInline(final Packet packet) {
+		final MessageReader request = packet.getRequest();
+		if (!request.read(packet.getBuffer()) || request.isResponse()
+				|| request.getEdnsVersion() > 0) {
+			return false;
+		}
+		if (isSrvQuestion(request)) {
+			if (!answerSrv(packet, false)) {
+				return false;
+			}
+			packet.release();
+			return true;
+		}
+		final int qType = answerType(request);
+		if (qType < 0) {
+			return false;
+		}
+		if (!answerFromNacos(packet, qType,
+				nacosDnsCore.findService(request.getQName(), false))) {
+			return false;
+		}
+		packet.release();
+		return true;
+	}
+
+	private void handler(final Packet packet) {
+		boolean forwarded = false;
 		try {
-			final Message message = new Message(data);
-			final Record question = message.getQuestion();
-			final String domain = question.getName().toString();
-			final Optional<Message> result = findFromNacos(message.clone(), question,
-					domain);
-			Message resp = result.orElseGet(
-					() -> findRecordFromBackend(data, message.clone(), question));
-			buffer.put(resp.toWire());
-			buffer.flip();
-			serverChannel.send(buffer, client);
+			final MessageReader request = packet.getRequest();
+			if (!request.isValid() && !request.read(packet.getBuffer())
+					|| request.isResponse()) {
+				LOGGER.debug("malformed request from {} is dropped", packet.getClient());
+				return;
+			}
+			if (request.getEdnsVersion() > 0) {
+				// only EDNS version 0 is spoken here, RFC 6891 6.1.3
+				replyEmpty(packet, DnsWireUtils.RCODE_BADVERS);
+				return;
+			}
+			if (findFromNacos(packet, request)) {
+				return;
+			}
+			forwarded = true;
+			findRecordFromBackend(packet);
 		}
 		catch (Throwable ex) {
 			LOGGER.error("response to client has error : {}",
 					ExceptionUtil.getStackTrace(ex));
 		}
 		finally {
-			bufferPool.set(buffer);
+			if (!forwarded) {
+				packet.release();
+			}
 		}
 	}
 
-	private Optional<Message> findFromNacos(final Message message, final Record request,
-			final String domain) {
-		Optional<InstanceRecord> optional = nacosDnsCore.selectOne(domain);
-		if (!optional.isPresent()) {
-			return Optional.empty();
+	/**
+	 * The address type to answer with, ANY is answered with the preferred family.
+	 *
+	 * @return {@link DnsWireUtils#TYPE_A}, {@link DnsWireUtils#TYPE_AAAA} or -1
+	 */
+	private int answerType(final MessageReader request) {
+		if (request.getQClass() != DnsWireUtils.CLASS_IN
+				|| Objects.isNull(request.getQName())) {
+			return -1;
 		}
-		InstanceRecord record = optional.get();
-		final String ip = record.getIp();
-		Record r = null;
-		InetSocketAddress address = new InetSocketAddress(record.getIp(),
-				record.getPort());
-		if (perfIPv6 && IPUtils.isIPv6(ip)) {
-			r = new AAAARecord(request.getName(), request.getDClass(), request.getTTL(),
-					address.getAddress());
+		switch (request.getQType()) {
+		case DnsWireUtils.TYPE_A:
+		case DnsWireUtils.TYPE_AAAA:
+			return request.getQType();
+		case DnsWireUtils.TYPE_ANY:
+			return perfIPv6 ? DnsWireUtils.TYPE_AAAA : DnsWireUtils.TYPE_A;
+		default:
+			return -1;
 		}
-		else {
-			r = new ARecord(request.getName(), request.getDClass(), request.getTTL(),
-					address.getAddress());
+	}
+
+	/**
+	 * A name served by nacos is always answered here, with NODATA when no instance has
+	 * an address of the asked type.
+	 *
+	 * @return false if nacos has no instance of the name and it must be forwarded
+	 */
+	private boolean findFromNacos(final Packet packet, final MessageReader request) {
+		if (isSrvQuestion(request)) {
+			return answerSrv(packet, true);
+		}
+		final String domain = request.getQName();
+		if (Objects.isNull(domain)) {
+			return false;
+		}
+		// fetched at most once, every step below answers from the same service
+		final NacosService service = nacosDnsCore.findService(domain, true);
+		final int qType = answerType(request);
+		if (qType >= 0 && answerFromNacos(packet, qType, service)) {
+			return true;
+		}
+		// ANY is not bound to a family, answer with the other one before NODATA
+		if (request.getQType() == DnsWireUtils.TYPE_ANY && qType >= 0
+				&& answerFromNacos(packet, qType == DnsWireUtils.TYPE_A
+						? DnsWireUtils.TYPE_AAAA : DnsWireUtils.TYPE_A, service)) {
+			return true;
+		}
+		// a SRV target is never looked up as a service
+		final int targetRCode = nacosDnsCore.targetRCode(domain);
+		if (targetRCode >= 0) {
+			replyEmpty(packet, targetRCode);
+			return true;
+		}
+		if (Objects.isNull(service) || Objects.isNull(service.selectOne())) {
+			return false;
+		}
+		replyEmpty(packet, DnsWireUtils.RCODE_NOERROR);
+		return true;
+	}
+
+	/**
+	 * Reply with the pre-encoded answers of the selected instances.
+	 *
+	 * @param service the service of the name, null if it is not cached or fetched
+	 * @return false if nacos has no address of this type for the name
+	 */
+	private boolean answerFromNacos(final Packet packet, final int qType,
+			final NacosService service) {
+		final String domain = packet.getRequest().getQName();
+		if (maxAnswers == 1) {
+			final byte[] answer = nacosDnsCore.selectAnswer(service, domain, qType);
+			if (Objects.isNull(answer)) {
+				return false;
+			}
+			reply(packet, answer);
+			return true;
+		}
+		final List<byte[]> answers = nacosDnsCore.selectAnswers(service, domain, qType,
+				maxAnswers);
+		if (answers.isEmpty()) {
+			return false;
 		}
-		message.addRecord(r, Section.ANSWER);
-		return Optional.of(message);
+		final MessageWriter response = beginResponse(packet, DnsWireUtils.RCODE_NOERROR);
+		for (byte[] answer : answers) {
+			if (!response.writeRecord(MessageWriter.SECTION_ANSWER, answer)) {
+				break;
+			}
+		}
+		send(packet, finishResponse(packet, DnsWireUtils.RCODE_NOERROR));
+		return true;
+	}
+
+	private boolean isSrvQuestion(final MessageReader request) {
+		return request.getQType() == DnsWireUtils.TYPE_SRV
+				&& request.getQClass() == DnsWireUtils.CLASS_IN
+				&& Objects.nonNull(request.getQName());
 	}
 
-	private Message findRecordFromBackend(final byte[] data, final Message message,
-			final Record request) {
+	/**
+	 * Reply with the SRV records of the selected instances and their addresses as glue
+	 * in the additional section, glue that does not fit is left out without TC.
+	 *
+	 * @return false if the name is not a nacos service with instances
+	 */
+	private boolean answerSrv(final Packet packet, final boolean fetch) {
+		final List<InstanceAnswers> instances = nacosDnsCore
+				.selectSrv(packet.getRequest().getQName(), maxSrvAnswers, fetch);
+		if (Objects.isNull(instances) || instances.isEmpty()) {
+			return false;
+		}
+		final MessageWriter response = beginResponse(packet, DnsWireUtils.RCODE_NOERROR);
+		int written = 0;
+		for (InstanceAnswers instance : instances) {
+			if (!response.writeRecord(MessageWriter.SECTION_ANSWER,
+					instance.answerOf(DnsWireUtils.TYPE_SRV))) {
+				break;
+			}
+			written++;
+		}
+		for (int i = 0; i < written; i++) {
+			final InstanceAnswers instance = instances.get(i);
+			writeGlue(response, instance.getTarget(), DnsWireUtils.TYPE_A,
+					instance.getIpv4Address());
+			writeGlue(response, instance.getTarget(), DnsWireUtils.TYPE_AAAA,
+					instance.getIpv6Address());
+		}
+		send(packet, finishResponse(packet, DnsWireUtils.RCODE_NOERROR));
+		return true;
+	}
+
+	private void writeGlue(final MessageWriter response, final String target,
+			final int type, final byte[] address) {
+		if (Objects.isNull(address)) {
+			return;
+		}
+		response.beginRecord(MessageWriter.SECTION_ADDITIONAL, target, type,
+				DnsWireUtils.CLASS_IN, Constants.NACOS_ANSWER_TTL);
+		response.put(address);
+		response.endRecord();
+	}
+
+	/**
+	 * Append a pre-encoded answer right after the client's own header and question and
+	 * send it, with TC set if it does not fit the client's UDP size.
+	 */
+	private void reply(final Packet packet, final byte[] answer) {
+		final MessageWriter response = beginResponse(packet, DnsWireUtils.RCODE_NOERROR);
+		response.writeRecord(MessageWriter.SECTION_ANSWER, answer);
+		send(packet, finishResponse(packet, DnsWireUtils.RCODE_NOERROR));
+	}
+
+	/**
+	 * Answer with the question only, e.g. NODATA or SERVFAIL.
+	 */
+	private void replyEmpty(final Packet packet, final int rCode) {
+		beginResponse(packet, rCode);
+		send(packet, finishResponse(packet, rCode));
+	}
+
+	/**
+	 * Start a response sized for the client, leaving room for the OPT record that
+	 * {@link #finishResponse(Packet, int)} echoes to an EDNS client.
+	 */
+	private MessageWriter beginResponse(final Packet packet, final int rCode) {
+		final MessageReader request = packet.getRequest();
+		final MessageWriter response = packet.getResponse();
+		final int maxLength = responseLimit(packet);
+		response.beginResponse(packet.getBuffer(), request, rCode, maxLength);
+		if (request.hasOpt()) {
+			response.limit(maxLength - MessageWriter.OPT_RECORD_LENGTH);
+		}
+		return response;
+	}
+
+	private ByteBuffer finishResponse(final Packet packet, final int rCode) {
+		final MessageReader request = packet.getRequest();
+		final MessageWriter response = packet.getResponse();
+		if (request.hasOpt()) {
+			response.limit(responseLimit(packet));
+			response.writeOpt(ednsPayloadSize, rCode,
+					request.getEdnsFlags() & MessageReader.EDNS_FLAG_DO);
+		}
+		if (packet.getResponder().isStream()) {
+			// a client over TCP has nowhere left to retry, TC would only confuse it
+			response.clearTruncated();
+		}
+		return response.finish();
+	}
+
+	/**
+	 * Any message fits a TCP stream. Over UDP it is the client's advertised payload size,
+	 * at least 512 and at most what this server advertises; 512 without EDNS.
+	 */
+	private int responseLimit(final Packet packet) {
+		if (packet.getResponder().isStream()) {
+			return MAX_TCP_LENGTH;
+		}
+		final MessageReader request = packet.getRequest();
+		if (!request.hasOpt()) {
+			return DnsWireUtils.MAX_UDP_LENGTH;
+		}
+		return Math.min(ednsPayloadSize,
+				Math.max(DnsWireUtils.MAX_UDP_LENGTH, request.getUdpPayloadSize()));
+	}
+
+	private void send(final Packet packet, final ByteBuffer response) {
 		try {
-			DatagramChannel channel = DatagramChannel.open();
-			channel.configureBlocking(true);
-			channel.connect(new InetSocketAddress(backendDnsServer, Constants.DNS_PORT));
-
-			ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-			buffer.put(data);
-			buffer.flip();
-			channel.write(buffer);
-			buffer.clear();
-
-			channel.receive(buffer);
-			buffer.flip();
-			byte[] receive = new byte[buffer.limit()];
-			buffer.get(receive, 0, receive.length);
-			return new Message(receive);
+			packet.getResponder().send(response, packet.getClient());
 		}
 		catch (Throwable ex) {
-			LOGGER.warn("Domain name resolution failed through upper DNS Server : {}",
+			LOGGER.error("response to client has error : {}",
 					ExceptionUtil.getStackTrace(ex));
-			message.addRecord(NULLRecord.newRecord(request.getName(), request.getType(),
-					request.getDClass()), Section.ANSWER);
-			return message;
 		}
+	}
+
+	/**
+	 * Relay an upstream response over the request in the packet's own direct buffer. A
+	 * response larger than the client accepts is replaced by an empty one with TC set, so
+	 * the client retries over TCP.
+	 */
+	private void replyRaw(final Packet packet, final byte[] response) {
+		if (response.length > responseLimit(packet)) {
+			beginResponse(packet, DnsWireUtils.getRCode(ByteBuffer.wrap(response)))
+					.setTruncated();
+			send(packet, finishResponse(packet, DnsWireUtils.RCODE_NOERROR));
+			return;
+		}
+		final ByteBuffer buffer = packet.getBuffer();
+		if (response.length > buffer.capacity()) {
+			send(packet, ByteBuffer.wrap(response));
+			return;
+		}
+		buffer.clear();
+		buffer.put(response);
+		buffer.flip();
+		send(packet, buffer);
+	}
+
+	/**
+	 * Forward the query without blocking, the packet is replied and released by the
+	 * callback.
+	 */
+	private void findRecordFromBackend(final Packet packet) {
+		final CompletableFuture<byte[]> future;
+		if (Objects.isNull(upstreamResolver)) {
+			future = new CompletableFuture<>();
+			future.completeExceptionally(
+					new IllegalStateException("backendDns is not configured"));
+		}
+		else {
+			future = upstreamResolver.resolve(packet.getBuffer(),
+					packet.getResponder().isStream());
+		}
+		future.whenComplete((response, throwable) -> {
+			try {
+				if (Objects.isNull(throwable)) {
+					replyRaw(packet, response);
+					return;
+				}
+				LOGGER.warn("Domain name resolution failed through upper DNS Server : {}",
+						ExceptionUtil.getStackTrace(throwable));
+				replyEmpty(packet, DnsWireUtils.RCODE_SERVFAIL);
+			}
+			catch (Throwable ex) {
+				LOGGER.error("response to client has error : {}",
+						ExceptionUtil.getStackTrace(ex));
+			}
+			finally {
+				packet.release();
+			}
+		});
+	}
+
+	public WorkerPool getWorkerPool() {
+		return workerPool;
+	}
 
+	public UpstreamResolver getUpstreamResolver() {
+		return upstreamResolver;
 	}
 
 	public void shutdown() throws Exception {
-		shutdown = true;
+		synchronized (reactorThreads) {
+			shutdown = true;
+		}
+		reactors.forEach(UdpReactor::shutdown);
+		tcpReactors.forEach(TcpReactor::shutdown);
+		for (Thread thread : reactorThreads) {
+			thread.join(TimeUnit.SECONDS.toMillis(3));
+		}
+		workerPool.shutdown();
+		if (Objects.nonNull(upstreamResolver)) {
+			upstreamResolver.shutdown();
+		}
 		nacosDnsCore.shutdown();
-		selector.close();
-		serverChannel.close();
 	}
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The group of a service, by the first serviceGroupMatch rule in declaration order whose
+ * pattern matches the whole name, or the default group if none does.
+ *
+ * <p>
+ * The rules are compiled into one alternation {@code (?<r0>p0)|(?<r1>p1)|...} that is
+ * tried left to right, so a name is matched once instead of once per rule. Rules that
+ * can not be combined, a numbered back-reference would refer to the wrong group and a
+ * named group may clash with another, are matched one by one instead. The results are
+ * memoized in a bounded LRU, a name is usually only matched on its first lookup.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+final class GroupResolver {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(GroupResolver.class);
+
+	private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\[1-9]");
+
+	private final String defaultGroup;
+
+	private final List<String> groups = new ArrayList<>();
+
+	/**
+	 * Null when the rules are matched one by one.
+	 */
+	private final Pattern combined;
+
+	private final List<Pattern> patterns = new ArrayList<>();
+
+	private final Cache<String, String> memo;
+
+	/**
+	 * @param rules pattern to group, iterated in declaration order
+	 * @param defaultGroup group of the names no rule matches
+	 * @param memoSize max number of memoized names
+	 */
+	GroupResolver(Map<String, String> rules, String defaultGroup, int memoSize) {
+		this.defaultGroup = defaultGroup;
+		this.memo = CacheBuilder.newBuilder().maximumSize(Math.max(1, memoSize)).build();
+		final StringBuilder alternation = new StringBuilder();
+		boolean combinable = true;
+		for (Map.Entry<String, String> rule : rules.entrySet()) {
+			// fails on an invalid pattern with the rule itself in the message
+			patterns.add(Pattern.compile(rule.getKey()));
+			combinable &= !BACK_REFERENCE.matcher(rule.getKey()).find();
+			if (alternation.length() > 0) {
+				alternation.append('|');
+			}
+			alternation.append("(?<r").append(groups.size()).append('>')
+					.append(rule.getKey()).append(')');
+			groups.add(rule.getValue());
+		}
+		this.combined = combinable && !groups.isEmpty()
+				? combine(alternation.toString())
+				: null;
+	}
+
+	private static Pattern combine(final String alternation) {
+		try {
+			return Pattern.compile(alternation);
+		}
+		catch (PatternSyntaxException ex) {
+			LOGGER.info("serviceGroupMatch rules can not be combined, they are matched "
+					+ "one by one : {}", ex.getDescription());
+			return null;
+		}
+	}
+
+	/**
+	 * @param serviceName service domain with the trailing dot
+	 * @return its group
+	 */
+	String resolve(final String serviceName) {
+		if (groups.isEmpty()) {
+			return defaultGroup;
+		}
+		final String memoized = memo.getIfPresent(serviceName);
+		if (Objects.nonNull(memoized)) {
+			return memoized;
+		}
+		final String group = match(serviceName);
+		memo.put(serviceName, group);
+		return group;
+	}
+
+	private String match(final String serviceName) {
+		if (Objects.isNull(combined)) {
+			for (int i = 0; i < patterns.size(); i++) {
+				if (patterns.get(i).matcher(serviceName).matches()) {
+					return groups.get(i);
+				}
+			}
+			return defaultGroup;
+		}
+		final Matcher matcher = combined.matcher(serviceName);
+		if (!matcher.matches()) {
+			return defaultGroup;
+		}
+		for (int i = 0; i < groups.size(); i++) {
+			if (Objects.nonNull(matcher.group("r" + i))) {
+				return groups.get(i);
+			}
+		}
+		return defaultGroup;
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * The names of the services that exist in nacos, as a bloom filter rebuilt on every
+ * refresh. A name the filter rules out is forwarded without asking nacos; a false
+ * positive only costs the lookup every name used to cost.
+ *
+ * <p>
+ * Until the first refresh succeeds every name may exist. Names are lower-cased, DNS
+ * names are case-insensitive.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+final class KnownServices {
+
+	/**
+	 * Room for growth between refreshes without raising the false positive rate.
+	 */
+	private static final int MIN_EXPECTED_NAMES = 1024;
+
+	private final double falsePositiveRate;
+
+	private final LongAdder skipped = new LongAdder();
+
+	/**
+	 * Replaced as a whole, never written after it is published.
+	 */
+	private volatile BloomFilter<CharSequence> filter;
+
+	KnownServices(double falsePositiveRate) {
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * @param serviceName service name without the trailing dot
+	 * @return false only if the service is definitely not in nacos
+	 */
+	boolean mightExist(final String serviceName) {
+		final BloomFilter<CharSequence> current = filter;
+		if (Objects.isNull(current)
+				|| current.mightContain(serviceName.toLowerCase(Locale.ROOT))) {
+			return true;
+		}
+		skipped.increment();
+		return false;
+	}
+
+	/**
+	 * @param serviceNames every service name of every resolved group
+	 */
+	void refresh(final Collection<String> serviceNames) {
+		final BloomFilter<CharSequence> next = BloomFilter.create(
+				Funnels.stringFunnel(StandardCharsets.UTF_8),
+				Math.max(MIN_EXPECTED_NAMES, serviceNames.size() * 2), falsePositiveRate);
+		for (String name : serviceNames) {
+			next.put(name.toLowerCase(Locale.ROOT));
+		}
+		filter = next;
+	}
+
+	/**
+	 * @return lookups that went straight to the backend NameServer
+	 */
+	long getSkippedCount() {
+		return skipped.sum();
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.net.InetSocketAddress;
+
+import com.conf.nacos.dns.constants.Constants;
+import com.conf.nacos.dns.constants.ListenProtocol;
+
+/**
+ * An address the server is bound to, with the socket options of its sockets.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class ListenConfig {
+
+	/**
+	 * IPv4 or IPv6 literal, {@code ::} accepts both families on a dual-stack host.
+	 */
+	private String address = "127.0.0.1";
+
+	private int port = Constants.DNS_PORT;
+
+	private ListenProtocol protocol = ListenProtocol.BOTH;
+
+	/**
+	 * SO_RCVBUF in bytes, a large one absorbs bursts the reactors have not read yet, 0
+	 * keeps the system default.
+	 */
+	private int receiveBufferSize = 0;
+
+	/**
+	 * SO_SNDBUF in bytes, 0 keeps the system default.
+	 */
+	private int sendBufferSize = 0;
+
+	/**
+	 * Bind with SO_REUSEPORT even with a single reactor, so other processes may share the
+	 * port. It is always set when there are several reactors.
+	 */
+	private boolean reusePort = false;
+
+	public ListenConfig() {
+	}
+
+	public ListenConfig(String address, int port) {
+		this.address = address;
+		this.port = port;
+	}
+
+	public InetSocketAddress toSocketAddress() {
+		return new InetSocketAddress(address, port);
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public void setAddress(String address) {
+		this.address = address;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public ListenProtocol getProtocol() {
+		return protocol;
+	}
+
+	public void setProtocol(ListenProtocol protocol) {
+		this.protocol = protocol;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+}
@@ -29,7 +29,9 @@
  */
 package com.conf.nacos.dns;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import com.conf.nacos.dns.pojo.InstanceRecord;
 
@@ -54,6 +56,27 @@ public interface LoadBalancer {
 	 */
 	InstanceRecord selectOne();
 
+	/**
+	 * Returns up to {@code count} distinct instances in the order this balancer prefers
+	 * them.
+	 *
+	 * @param count max number of instances
+	 * @return {@link List<InstanceRecord>}, empty if there is no instance
+	 */
+	default List<InstanceRecord> select(final int count) {
+		final List<InstanceRecord> selected = new ArrayList<>(count);
+		for (int i = 0; i < count * 2 && selected.size() < count; i++) {
+			final InstanceRecord record = selectOne();
+			if (Objects.isNull(record)) {
+				break;
+			}
+			if (!selected.contains(record)) {
+				selected.add(record);
+			}
+		}
+		return selected;
+	}
+
 	/**
 	 * loadbalancer name
 	 *
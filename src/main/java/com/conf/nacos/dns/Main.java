@@ -58,8 +58,8 @@ public class Main {
 		try {
 			NacosDnsConfig config = resourceInit();
 			server = DnsServer.create(config);
-			server.start();
 			registerShutdownHook();
+			server.start();
 		}
 		catch (Throwable ex) {
 			LOGGER.error("nacos-dns-server start failed : {}",
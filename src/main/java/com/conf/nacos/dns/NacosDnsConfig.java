@@ -30,6 +30,12 @@
 
 package com.conf.nacos.dns;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.conf.nacos.dns.constants.AnswerMode;
+
 /**
  * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
  */
@@ -37,12 +43,68 @@ public class NacosDnsConfig {
 
 	private String loadBalancer;
 
+	/**
+	 * Comma separated backend dns servers, {@code host[:port]}.
+	 */
 	private String backendDns;
 
 	private boolean perfIPv6 = false;
 
+	private AnswerMode answerMode = AnswerMode.SINGLE;
+
+	/**
+	 * Max addresses in one answer when answerMode is MULTIPLE.
+	 */
+	private int maxAnswers = 8;
+
 	private int bufferSize = 4096;
 
+	/**
+	 * Largest UDP response advertised in EDNS(0) OPT, capped by bufferSize.
+	 */
+	private int ednsPayloadSize = 1232;
+
+	/**
+	 * Number of preallocated receive buffers per reactor.
+	 */
+	private int bufferPoolSize = 1024;
+
+	/**
+	 * Number of UDP receive loops, each one owns a socket bound with SO_REUSEPORT.
+	 */
+	private int reactorCount = 1;
+
+	/**
+	 * How long a query waits for a service that is being fetched from nacos, in
+	 * milliseconds. The fetch itself goes on and fills the cache.
+	 */
+	private long fetchTimeout = 2000L;
+
+	/**
+	 * Number of threads fetching missed services from nacos.
+	 */
+	private int fetchThreads = 4;
+
+	private ServiceCacheConfig serviceCache = new ServiceCacheConfig();
+
+	private KnownServicesConfig knownServices = new KnownServicesConfig();
+
+	private PrewarmConfig prewarm = new PrewarmConfig();
+
+	private SnapshotConfig snapshot = new SnapshotConfig();
+
+	private WorkerConfig worker = new WorkerConfig();
+
+	private UpstreamConfig upstream = new UpstreamConfig();
+
+	private TcpConfig tcp = new TcpConfig();
+
+	/**
+	 * Endpoints the server is bound to, {@code 127.0.0.1:53} over UDP and TCP by default.
+	 */
+	private List<ListenConfig> listen = new ArrayList<>(
+			Collections.singletonList(new ListenConfig()));
+
 	private NamingResolverConfig resolver;
 
 	private NacosClientConfig nacosConfig;
@@ -71,6 +133,30 @@ public class NacosDnsConfig {
 		this.perfIPv6 = perfIPv6;
 	}
 
+	public AnswerMode getAnswerMode() {
+		return answerMode;
+	}
+
+	public void setAnswerMode(AnswerMode answerMode) {
+		this.answerMode = answerMode;
+	}
+
+	public int getMaxAnswers() {
+		return maxAnswers;
+	}
+
+	public void setMaxAnswers(int maxAnswers) {
+		this.maxAnswers = maxAnswers;
+	}
+
+	public int getEdnsPayloadSize() {
+		return ednsPayloadSize;
+	}
+
+	public void setEdnsPayloadSize(int ednsPayloadSize) {
+		this.ednsPayloadSize = ednsPayloadSize;
+	}
+
 	public int getBufferSize() {
 		return bufferSize;
 	}
@@ -79,6 +165,102 @@ public class NacosDnsConfig {
 		this.bufferSize = bufferSize;
 	}
 
+	public int getBufferPoolSize() {
+		return bufferPoolSize;
+	}
+
+	public void setBufferPoolSize(int bufferPoolSize) {
+		this.bufferPoolSize = bufferPoolSize;
+	}
+
+	public int getReactorCount() {
+		return reactorCount;
+	}
+
+	public void setReactorCount(int reactorCount) {
+		this.reactorCount = reactorCount;
+	}
+
+	public long getFetchTimeout() {
+		return fetchTimeout;
+	}
+
+	public void setFetchTimeout(long fetchTimeout) {
+		this.fetchTimeout = fetchTimeout;
+	}
+
+	public int getFetchThreads() {
+		return fetchThreads;
+	}
+
+	public void setFetchThreads(int fetchThreads) {
+		this.fetchThreads = fetchThreads;
+	}
+
+	public ServiceCacheConfig getServiceCache() {
+		return serviceCache;
+	}
+
+	public void setServiceCache(ServiceCacheConfig serviceCache) {
+		this.serviceCache = serviceCache;
+	}
+
+	public KnownServicesConfig getKnownServices() {
+		return knownServices;
+	}
+
+	public void setKnownServices(KnownServicesConfig knownServices) {
+		this.knownServices = knownServices;
+	}
+
+	public PrewarmConfig getPrewarm() {
+		return prewarm;
+	}
+
+	public void setPrewarm(PrewarmConfig prewarm) {
+		this.prewarm = prewarm;
+	}
+
+	public SnapshotConfig getSnapshot() {
+		return snapshot;
+	}
+
+	public void setSnapshot(SnapshotConfig snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	public WorkerConfig getWorker() {
+		return worker;
+	}
+
+	public void setWorker(WorkerConfig worker) {
+		this.worker = worker;
+	}
+
+	public TcpConfig getTcp() {
+		return tcp;
+	}
+
+	public void setTcp(TcpConfig tcp) {
+		this.tcp = tcp;
+	}
+
+	public List<ListenConfig> getListen() {
+		return listen;
+	}
+
+	public void setListen(List<ListenConfig> listen) {
+		this.listen = listen;
+	}
+
+	public UpstreamConfig getUpstream() {
+		return upstream;
+	}
+
+	public void setUpstream(UpstreamConfig upstream) {
+		this.upstream = upstream;
+	}
+
 	public NamingResolverConfig getResolver() {
 		return resolver;
 	}
@@ -30,30 +30,51 @@
 
 package com.conf.nacos.dns;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import com.alibaba.nacos.api.NacosFactory;
 import com.alibaba.nacos.api.exception.NacosException;
 import com.alibaba.nacos.api.naming.NamingService;
+import com.alibaba.nacos.api.naming.listener.EventListener;
 import com.alibaba.nacos.api.naming.listener.NamingEvent;
 import com.alibaba.nacos.api.naming.pojo.Instance;
+import com.alibaba.nacos.api.naming.pojo.ListView;
+import com.alibaba.nacos.common.executor.NameThreadFactory;
 import com.alibaba.nacos.common.utils.ExceptionUtil;
 import com.conf.nacos.dns.constants.Constants;
 import com.conf.nacos.dns.loadbalancer.RandomLoadBalancer;
 import com.conf.nacos.dns.pojo.InstanceRecord;
+import com.conf.nacos.dns.response.InstanceAnswers;
+import com.conf.nacos.dns.snapshot.ServiceSnapshot;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import com.google.common.net.InetAddresses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,11 +85,51 @@ public class NacosDnsCore {
 
 	private static final Logger logger = LoggerFactory.getLogger(NacosDnsCore.class);
 
-	private final Map<String, LoadBalancer> serviceCache = new ConcurrentHashMap<>(32);
+	private static final int MAX_PENDING_FETCHES = 1024;
 
-	private final LoadBalancer defaultLoadBalancer = new RandomLoadBalancer();
+	private static final long MIN_SWEEP_INTERVAL = 1000L;
 
-	private final Map<String, LoadBalancer> balancers = new HashMap<>(4);
+	private static final long MAX_SWEEP_INTERVAL = 60_000L;
+
+	private static final int SERVICE_PAGE_SIZE = 1000;
+
+	private static final String SERVER_UP = "UP";
+
+	private final ServiceCache serviceCache;
+
+	/**
+	 * Sweeps the service cache and refreshes the known services.
+	 */
+	private final ScheduledExecutorService scheduler;
+
+	/**
+	 * Null when disabled, every miss then asks nacos.
+	 */
+	private final KnownServices knownServices;
+
+	/**
+	 * Fetches in flight, removed as soon as they complete.
+	 */
+	private final Map<String, CompletableFuture<NacosService>> fetching = new ConcurrentHashMap<>(
+			16);
+
+	private final ExecutorService fetchExecutor;
+
+	private final long fetchTimeout;
+
+	private final int fetchThreads;
+
+	private final int serviceCacheSize;
+
+	/**
+	 * Null when disabled.
+	 */
+	private final ServiceSnapshot snapshot;
+
+	/**
+	 * Services restored from the snapshot at boot.
+	 */
+	private int restoredCount;
 
 	private final NamingService nacosClient;
 	private final NamingResolverConfig resolverConfig;
@@ -76,28 +137,114 @@ public class NacosDnsCore {
 	// It can change dynamically
 	private Supplier<LoadBalancer> supplier;
 	private volatile String balancerName = Constants.RANDOM_LOAD_BALANCER;
-	private volatile Map<String, Pattern> patternMap = new HashMap<>();
-	private volatile Map<String, String> serviceToGroup;
+	private final Map<String, String> serviceToGroup;
+	private final GroupResolver groupResolver;
+	private final Map<String, String> srvMapping = new HashMap<>();
 
 	public NacosDnsCore(NacosDnsConfig config) throws Throwable {
-		this.nacosClient = NacosFactory
-				.createNamingService(config.getNacosConfig().toNacosClientProperties());
+		this(config, () -> NacosFactory
+				.createNamingService(config.getNacosConfig().toNacosClientProperties()));
+	}
+
+	/**
+	 * @param clientFactory creates the naming client, only once the snapshot is restored
+	 */
+	NacosDnsCore(NacosDnsConfig config, Callable<NamingService> clientFactory)
+			throws Throwable {
 		this.serviceToGroup = Collections
 				.unmodifiableMap(config.getResolver().getServiceGroupMatch());
-		this.serviceToGroup.forEach((serviceRegx, group) -> {
-			this.patternMap.put(serviceRegx, Pattern.compile(serviceRegx));
-		});
 
 		this.balancerName = config.getLoadBalancer();
 
+		// every call returns a new balancer, a service keeps one for each address family
 		this.supplier = () -> {
-			ServiceLoader<LoadBalancer> loader = ServiceLoader.load(LoadBalancer.class);
-			loader.forEach(loadBalancer -> this.balancers.put(loadBalancer.name(),
-					loadBalancer));
-			return balancers.getOrDefault(this.balancerName, this.defaultLoadBalancer);
+			for (LoadBalancer loadBalancer : ServiceLoader.load(LoadBalancer.class)) {
+				if (Objects.equals(loadBalancer.name(), this.balancerName)) {
+					return loadBalancer;
+				}
+			}
+			return new RandomLoadBalancer();
 		};
 
 		this.resolverConfig = config.getResolver();
+		this.fetchTimeout = Math.max(1L, config.getFetchTimeout());
+		this.fetchThreads = Math.max(1, config.getFetchThreads());
+		final ServiceCacheConfig cacheConfig = config.getServiceCache();
+		this.serviceCacheSize = Math.max(1, cacheConfig.getMaxSize());
+		this.groupResolver = new GroupResolver(serviceToGroup,
+				resolverConfig.getDefaultGroup(), serviceCacheSize);
+		this.serviceCache = new ServiceCache(cacheConfig.getMaxSize(),
+				cacheConfig.getIdleTimeout(), this::evicted);
+		// answer from the last known instances before nacos is connected
+		this.snapshot = openSnapshot(config.getSnapshot());
+		restoreSnapshot();
+		this.nacosClient = clientFactory.call();
+		final long sweepInterval = cacheConfig.getIdleTimeout() > 0
+				? Math.max(MIN_SWEEP_INTERVAL,
+						Math.min(MAX_SWEEP_INTERVAL, cacheConfig.getIdleTimeout() / 4))
+				: MAX_SWEEP_INTERVAL;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(
+				new NameThreadFactory("com.conf.nacos.dns.service-scheduler"));
+		this.scheduler.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval,
+				TimeUnit.MILLISECONDS);
+		final KnownServicesConfig knownConfig = config.getKnownServices();
+		if (knownConfig.isEnabled()) {
+			this.knownServices = new KnownServices(knownConfig.getFalsePositiveRate());
+			final long refreshInterval = Math.max(MIN_SWEEP_INTERVAL,
+					knownConfig.getRefreshInterval());
+			// the pre-warm lists the services first
+			this.scheduler.scheduleWithFixedDelay(this::refreshKnownServices,
+					config.getPrewarm().isEnabled() ? refreshInterval : 0L,
+					refreshInterval, TimeUnit.MILLISECONDS);
+		}
+		else {
+			this.knownServices = null;
+		}
+		this.fetchExecutor = new ThreadPoolExecutor(fetchThreads, fetchThreads, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(MAX_PENDING_FETCHES),
+				new NameThreadFactory("com.conf.nacos.dns.nacos-fetch"));
+		this.resolverConfig.getSrvMapping().forEach((srvName, domain) -> this.srvMapping
+				.put(toDomain(srvName).toLowerCase(Locale.ROOT), toDomain(domain)));
+	}
+
+	private static ServiceSnapshot openSnapshot(final SnapshotConfig snapshotConfig) {
+		if (Objects.isNull(snapshotConfig.getPath())
+				|| snapshotConfig.getPath().isEmpty()) {
+			return null;
+		}
+		try {
+			return ServiceSnapshot.open(snapshotConfig.getPath(),
+					snapshotConfig.getMaxSize());
+		}
+		catch (Throwable ex) {
+			logger.error("snapshot {} can not be opened, the services are not kept : {}",
+					snapshotConfig.getPath(), ExceptionUtil.getStackTrace(ex));
+			return null;
+		}
+	}
+
+	/**
+	 * Cache the services of the snapshot without a listener, the sweep or the pre-warm
+	 * fetches and subscribes them once nacos is reachable.
+	 */
+	private void restoreSnapshot() {
+		if (Objects.isNull(snapshot)) {
+			return;
+		}
+		final long startTime = System.currentTimeMillis();
+		final Map<String, List<InstanceRecord>> services = snapshot.load();
+		services.forEach((serviceName, records) -> {
+			final NacosService service = new NacosService(serviceName, supplier);
+			service.recordChange(records);
+			serviceCache.put(service);
+		});
+		restoredCount = services.size();
+		logger.info("restored {} services from the snapshot, spend {} ms",
+				services.size(), System.currentTimeMillis() - startTime);
+	}
+
+	private static String toDomain(final String name) {
+		return name.endsWith(".") ? name : name + ".";
 	}
 
 	private static List<InstanceRecord> parseToInstanceRecord(List<Instance> instances) {
@@ -120,66 +267,546 @@ public class NacosDnsCore {
 	}
 
 	public Optional<InstanceRecord> selectOne(final String domain) {
-		if (!serviceCache.containsKey(domain)) {
-			obtainServiceFromRemoteServer(domain);
+		final NacosService service = obtainServiceFromRemoteServer(domain);
+		if (Objects.isNull(service)) {
+			return Optional.empty();
 		}
+		return Optional.ofNullable(service.selectOne());
+	}
 
-		final LoadBalancer balancer = serviceCache.get(domain);
-		if (Objects.isNull(balancer)) {
-			return Optional.empty();
+	/**
+	 * Select an instance and return its pre-encoded answer.
+	 *
+	 * @param domain service domain with the trailing dot
+	 * @param qType question type
+	 * @param fetch whether a miss may query the nacos server, false on an I/O thread
+	 * @return the encoded answer record, or null if there is none for this type
+	 */
+	public byte[] selectAnswer(final String domain, final int qType,
+			final boolean fetch) {
+		return selectAnswer(findService(domain, fetch), domain, qType);
+	}
+
+	/**
+	 * @param service the service of the domain from {@link #findService(String, boolean)}
+	 */
+	byte[] selectAnswer(final NacosService service, final String domain,
+			final int qType) {
+		if (Objects.isNull(service)) {
+			return targetAnswer(domain, qType);
+		}
+		return service.selectAnswer(qType);
+	}
+
+	/**
+	 * Select several instances and return their pre-encoded answers.
+	 *
+	 * @param domain service domain with the trailing dot
+	 * @param qType question type
+	 * @param max max number of answers
+	 * @param fetch whether a miss may query the nacos server, false on an I/O thread
+	 * @return the encoded answer records in balancer order, empty if there is none
+	 */
+	public List<byte[]> selectAnswers(final String domain, final int qType,
+			final int max, final boolean fetch) {
+		return selectAnswers(findService(domain, fetch), domain, qType, max);
+	}
+
+	/**
+	 * @param service the service of the domain from {@link #findService(String, boolean)}
+	 */
+	List<byte[]> selectAnswers(final NacosService service, final String domain,
+			final int qType, final int max) {
+		if (Objects.isNull(service)) {
+			final byte[] target = targetAnswer(domain, qType);
+			return Objects.isNull(target) ? Collections.emptyList()
+					: Collections.singletonList(target);
+		}
+		return service.selectAnswers(qType, max);
+	}
+
+	/**
+	 * The service a query is answered from. A query resolves it once and answers every
+	 * step from it, so a miss waits for nacos at most one fetch timeout and a failed
+	 * fetch is not started again for the same query.
+	 *
+	 * @param domain service domain with the trailing dot
+	 * @param fetch whether a miss may query the nacos server, false on an I/O thread
+	 * @return the service, or null if it is not cached and could not be fetched, also
+	 *     for a SRV target name
+	 */
+	NacosService findService(final String domain, final boolean fetch) {
+		return fetch ? obtainServiceFromRemoteServer(domain) : serviceCache.get(domain);
+	}
+
+	/**
+	 * A SRV target is {@code <ip with dashes>.<service domain>}, answered from the cached
+	 * service without asking the nacos server.
+	 */
+	private byte[] targetAnswer(final String name, final int qType) {
+		final NacosService service = parentService(name);
+		if (Objects.isNull(service)) {
+			return null;
+		}
+		return service.targetAnswer(name.substring(0, name.indexOf('.')), qType);
+	}
+
+	/**
+	 * @return the cached service the name is directly under, or null
+	 */
+	private NacosService parentService(final String name) {
+		final int dot = name.indexOf('.');
+		if (dot <= 0 || dot == name.length() - 1) {
+			return null;
+		}
+		return serviceCache.get(name.substring(dot + 1));
+	}
+
+	/**
+	 * A SRV target name of a cached service is answered from that service only, it is
+	 * never fetched from nacos as a service of its own.
+	 *
+	 * @param name question name with the trailing dot
+	 * @return {@link DnsWireUtils#RCODE_NOERROR} if it is the target of one of the
+	 *     instances, i.e. NODATA when that one has no address of the asked type,
+	 *     {@link DnsWireUtils#RCODE_NXDOMAIN} if it names an address the service has no
+	 *     instance at, -1 if it is not a target name
+	 */
+	public int targetRCode(final String name) {
+		final NacosService service = parentService(name);
+		if (Objects.isNull(service)) {
+			return -1;
+		}
+		final String label = name.substring(0, name.indexOf('.'));
+		if (service.hasTarget(label)) {
+			return DnsWireUtils.RCODE_NOERROR;
+		}
+		return isTargetLabel(label) ? DnsWireUtils.RCODE_NXDOMAIN : -1;
+	}
+
+	/**
+	 * @return whether the label is an ip with dashes, the form of every target label
+	 */
+	private static boolean isTargetLabel(final String label) {
+		return label.indexOf('-') > 0
+				&& (InetAddresses.isInetAddress(label.replace('-', '.'))
+						|| InetAddresses.isInetAddress(label.replace('-', ':')));
+	}
+
+	/**
+	 * Select several instances of the service a SRV name maps to. The name is looked up
+	 * in {@link NamingResolverConfig#getSrvMapping()} first, then {@code _svc._proto.}
+	 * is stripped from it; {@code _order._tcp.} alone maps to {@code order.}.
+	 *
+	 * @param name SRV question name with the trailing dot
+	 * @param max max number of instances
+	 * @param fetch whether a miss may query the nacos server, false on an I/O thread
+	 * @return the selected instances in balancer order, or null if the name is not a
+	 *     nacos service
+	 */
+	public List<InstanceAnswers> selectSrv(final String name, final int max,
+			final boolean fetch) {
+		final String domain = srvDomain(name);
+		if (Objects.isNull(domain)) {
+			return null;
+		}
+		final NacosService service = fetch ? obtainServiceFromRemoteServer(domain)
+				: serviceCache.get(domain);
+		if (Objects.isNull(service)) {
+			return null;
+		}
+		return service.selectInstances(max);
+	}
+
+	private String srvDomain(final String name) {
+		if (!srvMapping.isEmpty()) {
+			final String mapped = srvMapping.get(name.toLowerCase(Locale.ROOT));
+			if (Objects.nonNull(mapped)) {
+				return mapped;
+			}
+		}
+		final int service = name.indexOf('.');
+		final int proto = service < 0 ? -1 : name.indexOf('.', service + 1);
+		if (proto < 0 || name.charAt(0) != '_' || name.charAt(service + 1) != '_'
+				|| service < 2) {
+			return null;
+		}
+		if (proto == name.length() - 1) {
+			return name.substring(1, service + 1);
+		}
+		return name.substring(proto + 1);
+	}
+
+	/**
+	 * The cached service, or the one fetched from the nacos server. Only the first miss
+	 * of a name starts a fetch, on the fetch executor; concurrent misses wait on the same
+	 * future, and none of them longer than the fetch timeout. The cache is never locked
+	 * while nacos is queried, a slow fetch only delays the queries for its own name.
+	 *
+	 * @return the service, or null if it could not be fetched in time
+	 */
+	private NacosService obtainServiceFromRemoteServer(final String serviceName) {
+		final NacosService cached = serviceCache.get(serviceName);
+		if (Objects.nonNull(cached)) {
+			return cached;
+		}
+		if (targetRCode(serviceName) >= 0) {
+			return null;
+		}
+		if (Objects.nonNull(knownServices) && !knownServices
+				.mightExist(serviceName.substring(0, serviceName.length() - 1))) {
+			return null;
+		}
+		try {
+			return startFetch(serviceName).get(fetchTimeout, TimeUnit.MILLISECONDS);
 		}
-		return Optional.ofNullable(balancer.selectOne());
+		catch (TimeoutException ex) {
+			logger.warn("fetching service {} from nacos takes more than {} ms",
+					serviceName, fetchTimeout);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException ex) {
+			logger.debug("service {} is not available : {}", serviceName,
+					ex.getCause().toString());
+		}
+		return null;
+	}
+
+	/**
+	 * @return the fetch in flight for the name, a new one if there is none
+	 */
+	private CompletableFuture<NacosService> startFetch(final String serviceName) {
+		final CompletableFuture<NacosService> inflight = fetching.get(serviceName);
+		if (Objects.nonNull(inflight)) {
+			return inflight;
+		}
+		final CompletableFuture<NacosService> created = new CompletableFuture<>();
+		final CompletableFuture<NacosService> raced = fetching.putIfAbsent(serviceName,
+				created);
+		if (Objects.nonNull(raced)) {
+			return raced;
+		}
+		// a fetch may have completed between the cache read and the put, a service
+		// restored from the snapshot is fetched again to subscribe it
+		final NacosService fetched = serviceCache.get(serviceName);
+		if (Objects.nonNull(fetched) && Objects.nonNull(fetched.getListener())) {
+			fetching.remove(serviceName, created);
+			created.complete(fetched);
+			return created;
+		}
+		try {
+			fetchExecutor.execute(() -> fetch(serviceName, created));
+		}
+		catch (RejectedExecutionException ex) {
+			fetching.remove(serviceName, created);
+			created.completeExceptionally(ex);
+		}
+		return created;
 	}
 
-	private void obtainServiceFromRemoteServer(final String serviceName) {
-		serviceCache.computeIfAbsent(serviceName, name -> {
-			final LoadBalancer balancer = supplier.get();
+	/**
+	 * @param serviceName service domain with the trailing dot
+	 * @return the group of the first matching serviceGroupMatch pattern, or the default
+	 *     group
+	 */
+	private String resolveGroup(final String serviceName) {
+		return groupResolver.resolve(serviceName);
+	}
 
-			AtomicReference<String> targetGroup = new AtomicReference<>(
-					resolverConfig.getDefaultGroup());
-			for (Map.Entry<String, Pattern> e : patternMap.entrySet()) {
-				final Pattern p = e.getValue();
-				Matcher matcher = p.matcher(serviceName);
-				if (matcher.matches()) {
-					targetGroup.set(serviceToGroup.get(e.getKey()));
+	/**
+	 * A service that does not exist in nacos is cached without instances, so it is not
+	 * asked again until it is registered. A failed fetch is not cached, the next miss
+	 * retries it.
+	 */
+	private void fetch(final String serviceName,
+			final CompletableFuture<NacosService> future) {
+		try {
+			final NacosService service = new NacosService(serviceName, supplier);
+			final String group = resolveGroup(serviceName);
+			String domain = serviceName.substring(0, serviceName.length() - 1);
+			logger.debug("domain info : {}, serviceName : {}, groupName : {}", domain,
+					domain, group);
+			List<Instance> instances = nacosClient.getAllInstances(domain, group);
+			final NacosService cached = serviceCache.get(serviceName);
+			if (Objects.nonNull(cached) && keepsLastKnown(cached, instances)) {
+				future.complete(cached);
+				return;
+			}
+			record(service, parseToInstanceRecord(instances));
+			// subscribed before it is cached, only a restored service has no listener
+			registerInstanceChangeObserver(service, domain, group);
+			serviceCache.put(service);
+			future.complete(service);
+		}
+		catch (Throwable ex) {
+			logger.error("An error occurred querying the service instance remotely : {}",
+					ExceptionUtil.getStackTrace(ex));
+			future.completeExceptionally(ex);
+		}
+		finally {
+			fetching.remove(serviceName, future);
+		}
+	}
+
+	/**
+	 * The listener updates the service it was registered for, the event's service name
+	 * carries the group and never matched a cache key.
+	 */
+	private void registerInstanceChangeObserver(final NacosService service,
+			final String domain, final String group) throws NacosException {
+		final EventListener listener = event -> {
+			if (event instanceof NamingEvent) {
+				final List<Instance> newInstances = ((NamingEvent) event).getInstances();
+				if (!keepsLastKnown(service, newInstances)) {
+					record(service, parseToInstanceRecord(newInstances));
 				}
 			}
+		};
+		nacosClient.subscribe(domain, group, listener);
+		service.subscribed(group, listener);
+	}
+
+	/**
+	 * nacos-client swallows the errors of a query and answers an empty list when the
+	 * server is unreachable, a service with instances only loses all of them while nacos
+	 * is up; until then neither the service nor the snapshot is changed.
+	 */
+	private boolean keepsLastKnown(final NacosService service,
+			final List<Instance> instances) {
+		if (!instances.isEmpty() || !service.hasInstances() || isServerUp()) {
+			return false;
+		}
+		logger.warn("nacos is not up, service {} keeps its last known instances",
+				service.getDomain());
+		return true;
+	}
+
+	private boolean isServerUp() {
+		try {
+			return Objects.equals(SERVER_UP, nacosClient.getServerStatus());
+		}
+		catch (Throwable ex) {
+			return false;
+		}
+	}
+
+	private void record(final NacosService service, final List<InstanceRecord> records) {
+		service.recordChange(records);
+		if (Objects.nonNull(snapshot)) {
+			snapshot.write(service.getDomain(), records);
+		}
+	}
+
+	/**
+	 * A replaced service is still cached under its name, it stays in the snapshot.
+	 */
+	private void evicted(final NacosService service) {
+		unsubscribe(service);
+		if (Objects.nonNull(snapshot)
+				&& Objects.isNull(serviceCache.get(service.getDomain()))) {
+			snapshot.remove(service.getDomain());
+		}
+	}
 
-			try {
-				String domain = serviceName.substring(0, serviceName.length() - 1);
-				logger.debug("domain info : {}, serviceName : {}, groupName : {}", domain,
-						domain, targetGroup.get());
-				List<Instance> instances = nacosClient.getAllInstances(domain,
-						targetGroup.get());
-				registerInstanceChangeObserver(serviceName);
-				balancer.recordChange(parseToInstanceRecord(instances));
+	private void unsubscribe(final NacosService service) {
+		if (Objects.isNull(service.getListener())) {
+			return;
+		}
+		final String serviceName = service.getDomain();
+		try {
+			nacosClient.unsubscribe(serviceName.substring(0, serviceName.length() - 1),
+					service.getGroup(), service.getListener());
+			logger.debug("service {} is evicted and unsubscribed", serviceName);
+		}
+		catch (Throwable ex) {
+			logger.error("unsubscribe service {} has error : {}", serviceName,
+					ExceptionUtil.getStackTrace(ex));
+		}
+	}
+
+	private void sweep() {
+		try {
+			final long evictions = serviceCache.getEvictionCount();
+			final long expirations = serviceCache.getExpirationCount();
+			serviceCache.sweep(System.nanoTime());
+			serviceCache.forEach(service -> {
+				if (Objects.isNull(service.getListener())) {
+					startFetch(service.getDomain());
+				}
+			});
+			if (serviceCache.getEvictionCount() != evictions
+					|| serviceCache.getExpirationCount() != expirations) {
+				logger.info("service cache size {}, evicted {} when full, {} when idle",
+						serviceCache.size(), serviceCache.getEvictionCount(),
+						serviceCache.getExpirationCount());
 			}
-			catch (Throwable ex) {
-				logger.error(
-						"An error occurred querying the service instance remotely : {}",
-						ExceptionUtil.getStackTrace(ex));
+		}
+		catch (Throwable ex) {
+			logger.error("service cache sweep has error : {}",
+					ExceptionUtil.getStackTrace(ex));
+		}
+	}
+
+	/**
+	 * List the services of every group a name can resolve to. A failed refresh keeps the
+	 * names of the last one.
+	 */
+	private void refreshKnownServices() {
+		try {
+			final List<String> names = new ArrayList<>();
+			listServices().values().forEach(names::addAll);
+			knownServices.refresh(names);
+			logger.debug("{} services are known", names.size());
+		}
+		catch (Throwable ex) {
+			logger.warn("listing the services of nacos has error : {}",
+					ExceptionUtil.getStackTrace(ex));
+		}
+	}
+
+	/**
+	 * @return the service names of the default group and every serviceGroupMatch group,
+	 *     by group
+	 */
+	private Map<String, List<String>> listServices() throws NacosException {
+		final Set<String> groups = new HashSet<>(serviceToGroup.values());
+		groups.add(resolverConfig.getDefaultGroup());
+		final Map<String, List<String>> services = new HashMap<>(groups.size());
+		for (String group : groups) {
+			final List<String> names = new ArrayList<>();
+			for (int page = 1;; page++) {
+				final ListView<String> view = nacosClient.getServicesOfServer(page,
+						SERVICE_PAGE_SIZE, group);
+				final List<String> data = Objects.isNull(view) ? null : view.getData();
+				if (Objects.isNull(data) || data.isEmpty()) {
+					break;
+				}
+				names.addAll(data);
+				if (data.size() < SERVICE_PAGE_SIZE) {
+					break;
+				}
 			}
-			return balancer;
-		});
+			services.put(group, names);
+		}
+		return services;
 	}
 
-	private void registerInstanceChangeObserver(final String serviceName)
-			throws NacosException {
-		nacosClient.subscribe(serviceName, event -> {
-			NamingEvent namingEvent = (NamingEvent) event;
-			final String name = namingEvent.getServiceName();
-			final List<Instance> newInstances = namingEvent.getInstances();
-			serviceCache.computeIfPresent(name, (s, balancer) -> {
-				balancer.recordChange(parseToInstanceRecord(newInstances));
-				return balancer;
+	/**
+	 * Fetch and subscribe every service of the resolved groups before the server answers,
+	 * at most fetchThreads at a time, so the first query of a service after a restart is
+	 * a cache hit. A service listed in a group its name does not resolve to is skipped,
+	 * queries would never look it up there. Returns early at the timeout, the remaining
+	 * fetches go on in the background.
+	 *
+	 * @param timeoutMillis how long to wait for all the services
+	 * @return true if every service was fetched in time
+	 */
+	public boolean prewarm(final long timeoutMillis) {
+		final long startTime = System.currentTimeMillis();
+		final long deadline = startTime + timeoutMillis;
+		final List<String> serviceNames = new ArrayList<>();
+		try {
+			final Map<String, List<String>> services = listServices();
+			final List<String> names = new ArrayList<>();
+			services.forEach((group, groupNames) -> {
+				names.addAll(groupNames);
+				for (String name : groupNames) {
+					final String serviceName = toDomain(name);
+					if (Objects.equals(group, resolveGroup(serviceName))) {
+						serviceNames.add(serviceName);
+					}
+				}
 			});
-		});
+			if (Objects.nonNull(knownServices)) {
+				knownServices.refresh(names);
+			}
+		}
+		catch (Throwable ex) {
+			logger.error("pre-warm can not list the services of nacos : {}",
+					ExceptionUtil.getStackTrace(ex));
+			return false;
+		}
+		final int total = Math.min(serviceNames.size(), serviceCacheSize);
+		logger.info("pre-warm {} of {} nacos services", total, serviceNames.size());
+		final Semaphore permits = new Semaphore(fetchThreads);
+		final AtomicInteger done = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		// progress is reported every tenth of the services
+		final int step = Math.max(1, total / 10);
+		try {
+			for (int i = 0; i < total; i++) {
+				if (!permits.tryAcquire(Math.max(0L, deadline - System.currentTimeMillis()),
+						TimeUnit.MILLISECONDS)) {
+					break;
+				}
+				startFetch(serviceNames.get(i)).whenComplete((service, ex) -> {
+					if (Objects.nonNull(ex)) {
+						failed.incrementAndGet();
+					}
+					final int finished = done.incrementAndGet();
+					permits.release();
+					if (finished % step == 0 && finished < total) {
+						logger.info("pre-warm {}/{} services, {} failed, {} ms", finished,
+								total, failed.get(), System.currentTimeMillis() - startTime);
+					}
+				});
+			}
+			permits.tryAcquire(fetchThreads,
+					Math.max(0L, deadline - System.currentTimeMillis()),
+					TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		final boolean complete = done.get() == total;
+		logger.info("pre-warm {} : {}/{} services, {} failed, spend {} ms",
+				complete ? "finished" : "timed out", done.get(), total, failed.get(),
+				System.currentTimeMillis() - startTime);
+		return complete && failed.get() == 0;
+	}
+
+	/**
+	 * @return misses forwarded without asking nacos, the name is not one of its services
+	 */
+	public long getSkippedLookupCount() {
+		return Objects.isNull(knownServices) ? 0L : knownServices.getSkippedCount();
+	}
+
+	/**
+	 * @return services restored from the snapshot at boot, they are answered before
+	 *     nacos is reachable
+	 */
+	public int getRestoredCount() {
+		return restoredCount;
+	}
+
+	public int getServiceCount() {
+		return serviceCache.size();
+	}
+
+	/**
+	 * @return services evicted because the cache was full
+	 */
+	public long getEvictionCount() {
+		return serviceCache.getEvictionCount();
+	}
+
+	/**
+	 * @return services evicted because they were not queried for the idle timeout
+	 */
+	public long getExpirationCount() {
+		return serviceCache.getExpirationCount();
 	}
 
 	public void shutdown() {
+		scheduler.shutdownNow();
+		fetchExecutor.shutdownNow();
+		if (Objects.nonNull(snapshot)) {
+			snapshot.close();
+		}
 		serviceCache.clear();
-		serviceToGroup.clear();
-		patternMap.clear();
 	}
 
 }
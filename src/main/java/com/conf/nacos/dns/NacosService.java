@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import com.alibaba.nacos.api.naming.listener.EventListener;
+import com.conf.nacos.dns.constants.Constants;
+import com.conf.nacos.dns.pojo.InstanceRecord;
+import com.conf.nacos.dns.response.InstanceAnswers;
+import com.conf.nacos.dns.response.ServiceAnswers;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+
+/**
+ * A cached service, a {@link LoadBalancer} for each address family and the answers
+ * pre-encoded for the same instances. An A question only ever picks from the instances
+ * with an IPv4 address, an AAAA question from those with an IPv6 one.
+ *
+ * <p>
+ * The balancers and the answers of one change are published together as a
+ * {@link Generation}; a record picked by a balancer is only ever looked up in the answers
+ * of its own generation.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+final class NacosService {
+
+	private static final int MAX_FREQUENCY = Integer.MAX_VALUE >>> 1;
+
+	private static final long ACCESS_GRANULARITY = TimeUnit.SECONDS.toNanos(1);
+
+	private final String domain;
+
+	private final Supplier<LoadBalancer> supplier;
+
+	private volatile Generation generation;
+
+	/**
+	 * Nacos group the service was fetched from and its change listener, to unsubscribe
+	 * when it is evicted.
+	 */
+	private String group;
+
+	private EventListener listener;
+
+	/**
+	 * Approximate number of queries since the last aging, a race only loses counts.
+	 */
+	private int frequency;
+
+	private volatile long lastAccess = System.nanoTime();
+
+	NacosService(String domain, Supplier<LoadBalancer> supplier) {
+		this.domain = domain;
+		this.supplier = supplier;
+		this.generation = new Generation(ServiceAnswers.EMPTY, supplier.get(),
+				supplier.get());
+	}
+
+	String getDomain() {
+		return domain;
+	}
+
+	String getGroup() {
+		return group;
+	}
+
+	EventListener getListener() {
+		return listener;
+	}
+
+	void subscribed(final String group, final EventListener listener) {
+		this.group = group;
+		this.listener = listener;
+	}
+
+	/**
+	 * Count a query, the last access time is only written once per granularity so hot
+	 * services do not bounce the cache line between reactors.
+	 */
+	private void touch() {
+		if (frequency < MAX_FREQUENCY) {
+			frequency++;
+		}
+		final long now = System.nanoTime();
+		if (now - lastAccess > ACCESS_GRANULARITY) {
+			lastAccess = now;
+		}
+	}
+
+	int getFrequency() {
+		return frequency;
+	}
+
+	/**
+	 * Halve the frequency, so services that were hot long ago can be evicted.
+	 */
+	void age() {
+		frequency >>>= 1;
+	}
+
+	long getLastAccess() {
+		return lastAccess;
+	}
+
+	/**
+	 * The answers are rebuilt here and only here, a query never encodes a record. Only
+	 * healthy and enabled instances are served, unless there is none of them left.
+	 *
+	 * @param records new instances of the service
+	 */
+	synchronized void recordChange(final List<InstanceRecord> records) {
+		final List<InstanceRecord> available = records.stream()
+				.filter(record -> record.isHealthy() && record.isEnabled())
+				.collect(Collectors.toList());
+		final List<InstanceRecord> served = available.isEmpty() ? records : available;
+		final LoadBalancer ipv4Balancer = supplier.get();
+		ipv4Balancer.recordChange(served.stream()
+				.filter(record -> record.getFamily().hasIpv4())
+				.collect(Collectors.toCollection(CopyOnWriteArrayList::new)));
+		final LoadBalancer ipv6Balancer = supplier.get();
+		ipv6Balancer.recordChange(served.stream()
+				.filter(record -> record.getFamily().hasIpv6())
+				.collect(Collectors.toCollection(CopyOnWriteArrayList::new)));
+		generation = new Generation(
+				ServiceAnswers.build(domain, served, Constants.NACOS_ANSWER_TTL),
+				ipv4Balancer, ipv6Balancer);
+	}
+
+	/**
+	 * @return an instance of either family, IPv4 first, or null if none has an address
+	 */
+	InstanceRecord selectOne() {
+		touch();
+		final Generation current = generation;
+		final InstanceRecord record = current.ipv4Balancer.selectOne();
+		return Objects.nonNull(record) ? record : current.ipv6Balancer.selectOne();
+	}
+
+	/**
+	 * @param qType question type
+	 * @return the encoded answer of a selected instance, or null if no instance has an
+	 *     address of this type
+	 */
+	byte[] selectAnswer(final int qType) {
+		touch();
+		final Generation current = generation;
+		final LoadBalancer balancer = current.balancerOf(qType);
+		if (Objects.isNull(balancer)) {
+			return null;
+		}
+		final InstanceRecord record = balancer.selectOne();
+		return Objects.isNull(record) ? null : current.answers.answerOf(record, qType);
+	}
+
+	/**
+	 * @param qType question type
+	 * @param max max number of answers
+	 * @return the encoded answers of the selected instances in balancer order, empty if
+	 *     no instance has an address of this type
+	 */
+	List<byte[]> selectAnswers(final int qType, final int max) {
+		touch();
+		final Generation current = generation;
+		final LoadBalancer balancer = current.balancerOf(qType);
+		if (Objects.isNull(balancer)) {
+			return Collections.emptyList();
+		}
+		final List<byte[]> selected = new ArrayList<>(max);
+		for (InstanceRecord record : balancer.select(max)) {
+			final byte[] answer = current.answers.answerOf(record, qType);
+			if (Objects.nonNull(answer)) {
+				selected.add(answer);
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @param max max number of instances
+	 * @return the records of the selected instances, IPv4 balancer order first, for SRV
+	 *     answers
+	 */
+	List<InstanceAnswers> selectInstances(final int max) {
+		touch();
+		final Generation current = generation;
+		final List<InstanceAnswers> selected = new ArrayList<>(max);
+		final Set<InstanceRecord> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (LoadBalancer balancer : new LoadBalancer[] { current.ipv4Balancer,
+				current.ipv6Balancer }) {
+			for (InstanceRecord record : balancer.select(max)) {
+				final InstanceAnswers instance = current.answers.instanceOf(record);
+				if (selected.size() < max && Objects.nonNull(instance) && seen.add(record)) {
+					selected.add(instance);
+				}
+			}
+		}
+		return selected;
+	}
+
+	/**
+	 * @return whether any instance is answered
+	 */
+	boolean hasInstances() {
+		return !generation.answers.isEmpty();
+	}
+
+	/**
+	 * @param label first label of a SRV target name of this service
+	 * @return whether one of the instances has this target name
+	 */
+	boolean hasTarget(final String label) {
+		return generation.answers.hasTarget(label);
+	}
+
+	/**
+	 * @param label first label of a SRV target name of this service
+	 * @param qType question type
+	 * @return the address answer of that instance, or null
+	 */
+	byte[] targetAnswer(final String label, final int qType) {
+		touch();
+		return generation.answers.targetAnswer(label, qType);
+	}
+
+	/**
+	 * The balancers and the answers built from the same instances.
+	 */
+	private static final class Generation {
+
+		private final ServiceAnswers answers;
+
+		private final LoadBalancer ipv4Balancer;
+
+		private final LoadBalancer ipv6Balancer;
+
+		Generation(ServiceAnswers answers, LoadBalancer ipv4Balancer,
+				LoadBalancer ipv6Balancer) {
+			this.answers = answers;
+			this.ipv4Balancer = ipv4Balancer;
+			this.ipv6Balancer = ipv6Balancer;
+		}
+
+		LoadBalancer balancerOf(final int qType) {
+			switch (qType) {
+			case DnsWireUtils.TYPE_A:
+				return ipv4Balancer;
+			case DnsWireUtils.TYPE_AAAA:
+				return ipv6Balancer;
+			default:
+				return null;
+			}
+		}
+
+	}
+
+}
@@ -31,6 +31,7 @@
 package com.conf.nacos.dns;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import com.conf.nacos.dns.constants.Constants;
@@ -44,7 +45,13 @@ public class NamingResolverConfig {
 
 	private String defaultGroup = Constants.DEFAULT_GROUP;
 
-	private Map<String, String> serviceGroupMatch = new HashMap<>();
+	/**
+	 * Service name pattern to group, the first matching pattern in declaration order
+	 * wins.
+	 */
+	private Map<String, String> serviceGroupMatch = new LinkedHashMap<>();
+
+	private Map<String, String> srvMapping = new HashMap<>();
 
 	public NamingResolverConfig(String defaultGroup) {
 		this.defaultGroup = defaultGroup;
@@ -65,4 +72,12 @@ public class NamingResolverConfig {
 	public void setServiceGroupMatch(Map<String, String> serviceGroupMatch) {
 		this.serviceGroupMatch = serviceGroupMatch;
 	}
+
+	public Map<String, String> getSrvMapping() {
+		return srvMapping;
+	}
+
+	public void setSrvMapping(Map<String, String> srvMapping) {
+		this.srvMapping = srvMapping;
+	}
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The services fetched from nacos, bounded in size and idle time. Reads are plain
+ * {@link ConcurrentHashMap} reads; evictions happen on the fetch and sweeper threads.
+ *
+ * <p>
+ * Beyond the max size the least frequently queried services are evicted, the least
+ * recently queried first among equals, down to 15/16 of the max size so that a full
+ * cache is not sorted on every insert. Every sweep halves the frequencies, a service
+ * that was hot long ago does not stay forever.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+final class ServiceCache {
+
+	private static final Comparator<Candidate> EVICTION_ORDER = Comparator
+			.comparingInt((Candidate candidate) -> candidate.frequency)
+			.thenComparingLong(candidate -> candidate.lastAccess);
+
+	private final Map<String, NacosService> services = new ConcurrentHashMap<>(32);
+
+	private final int maxSize;
+
+	private final long idleTimeoutNanos;
+
+	private final Consumer<NacosService> evicted;
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder expirations = new LongAdder();
+
+	/**
+	 * @param maxSize max number of services
+	 * @param idleTimeoutMillis idle time before a service expires, 0 disables it
+	 * @param evicted called with every service removed, e.g. to unsubscribe it
+	 */
+	ServiceCache(int maxSize, long idleTimeoutMillis, Consumer<NacosService> evicted) {
+		this.maxSize = Math.max(1, maxSize);
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+		this.evicted = evicted;
+	}
+
+	NacosService get(final String domain) {
+		return services.get(domain);
+	}
+
+	/**
+	 * Cache a service, evicting others if the cache is full. The new service itself is
+	 * never the victim, it has not had the chance to be queried yet.
+	 */
+	void put(final NacosService service) {
+		final NacosService previous = services.put(service.getDomain(), service);
+		if (Objects.nonNull(previous) && previous != service) {
+			evicted.accept(previous);
+		}
+		if (services.size() > maxSize) {
+			evictOverflow(service);
+		}
+	}
+
+	/**
+	 * Expire idle services, evict the overflow and age the frequencies.
+	 *
+	 * @param now {@link System#nanoTime()}
+	 */
+	synchronized void sweep(final long now) {
+		for (NacosService service : services.values()) {
+			if (idleTimeoutNanos > 0 && now - service.getLastAccess() > idleTimeoutNanos) {
+				remove(service, expirations);
+			}
+			else {
+				service.age();
+			}
+		}
+		evictOverflow(null);
+	}
+
+	private synchronized void evictOverflow(final NacosService keep) {
+		final int lowWatermark = maxSize - (maxSize >>> 4);
+		if (services.size() <= maxSize) {
+			return;
+		}
+		// queries keep touching the services, sort a copy of their counters or the
+		// comparator is not consistent and the sort may throw
+		final List<Candidate> candidates = new ArrayList<>(services.size());
+		for (NacosService service : services.values()) {
+			if (service != keep) {
+				candidates.add(new Candidate(service));
+			}
+		}
+		candidates.sort(EVICTION_ORDER);
+		final int excess = services.size() - lowWatermark;
+		for (int i = 0; i < excess && i < candidates.size(); i++) {
+			remove(candidates.get(i).service, evictions);
+		}
+	}
+
+	private void remove(final NacosService service, final LongAdder counter) {
+		if (services.remove(service.getDomain(), service)) {
+			counter.increment();
+			evicted.accept(service);
+		}
+	}
+
+	void forEach(final Consumer<NacosService> action) {
+		services.values().forEach(action);
+	}
+
+	int size() {
+		return services.size();
+	}
+
+	/**
+	 * @return services evicted because the cache was full
+	 */
+	long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return services evicted because they were idle
+	 */
+	long getExpirationCount() {
+		return expirations.sum();
+	}
+
+	void clear() {
+		services.clear();
+	}
+
+	private static final class Candidate {
+
+		private final int frequency;
+
+		private final long lastAccess;
+
+		private final NacosService service;
+
+		Candidate(NacosService service) {
+			this.frequency = service.getFrequency();
+			this.lastAccess = service.getLastAccess();
+			this.service = service;
+		}
+
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+/**
+ * How queries that miss nacos are forwarded to the backend dns.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class UpstreamConfig {
+
+	/**
+	 * Number of long-lived sockets per backend, shared by all forwarded queries.
+	 */
+	private int sockets = 4;
+
+	/**
+	 * How long to wait for the backend dns, in milliseconds.
+	 */
+	private long timeout = 2000L;
+
+	/**
+	 * A query is also sent to the next backend when the current one has not answered
+	 * within this percentile of its recent round-trip times.
+	 */
+	private double hedgePercentile = 0.95D;
+
+	/**
+	 * Lower bound of the hedging delay, in milliseconds.
+	 */
+	private long hedgeMinDelay = 5L;
+
+	/**
+	 * Max number of cached backend responses, 0 disables the cache.
+	 */
+	private int cacheSize = 10_000;
+
+	/**
+	 * Upper bound of how long a positive response is cached, in seconds.
+	 */
+	private long cacheMaxTtl = 3600L;
+
+	/**
+	 * Upper bound of how long a NXDOMAIN/NODATA response is cached, in seconds.
+	 */
+	private long negativeCacheMaxTtl = 900L;
+
+	public int getSockets() {
+		return sockets;
+	}
+
+	public void setSockets(int sockets) {
+		this.sockets = sockets;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	public void setHedgePercentile(double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	public long getHedgeMinDelay() {
+		return hedgeMinDelay;
+	}
+
+	public void setHedgeMinDelay(long hedgeMinDelay) {
+		this.hedgeMinDelay = hedgeMinDelay;
+	}
+
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public long getCacheMaxTtl() {
+		return cacheMaxTtl;
+	}
+
+	public void setCacheMaxTtl(long cacheMaxTtl) {
+		this.cacheMaxTtl = cacheMaxTtl;
+	}
+
+	public long getNegativeCacheMaxTtl() {
+		return negativeCacheMaxTtl;
+	}
+
+	public void setNegativeCacheMaxTtl(long negativeCacheMaxTtl) {
+		this.negativeCacheMaxTtl = negativeCacheMaxTtl;
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import com.conf.nacos.dns.utils.DnsWireUtils;
+
+/**
+ * A reusable cursor over a dns query. {@link #read(ByteBuffer)} walks the message once
+ * and only records offsets and header values, nothing is copied out of the buffer.
+ * One reader belongs to one {@link com.conf.nacos.dns.transport.Packet} and is not
+ * thread safe.
+ *
+ * <pre>
+ *   header(12) | qname qtype qclass | answer | authority | additional(OPT)
+ * </pre>
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class MessageReader {
+
+	public static final int EDNS_FLAG_DO = 0x8000;
+
+	private static final int FLAG_QR = 0x8000;
+
+	private static final int OPCODE_SHIFT = 11;
+
+	/**
+	 * TYPE, CLASS, TTL and RDLENGTH after the owner name of a resource record.
+	 */
+	private static final int RECORD_FIXED_LENGTH = 10;
+
+	private ByteBuffer buffer;
+
+	private boolean valid;
+
+	private int id;
+
+	private int flags;
+
+	private int qdCount;
+
+	private int anCount;
+
+	private int nsCount;
+
+	private int arCount;
+
+	private int nameEnd;
+
+	private int qType;
+
+	private int qClass;
+
+	private String qName;
+
+	/**
+	 * Offset of the OPT owner name, -1 without EDNS.
+	 */
+	private int optOffset;
+
+	private int udpPayloadSize;
+
+	private int extendedRCode;
+
+	private int ednsVersion;
+
+	private int ednsFlags;
+
+	/**
+	 * Parse a single question query between index 0 and the limit of the buffer.
+	 *
+	 * @param buffer message, neither position nor limit is changed
+	 * @return true if the header and the question are well formed
+	 */
+	public boolean read(final ByteBuffer buffer) {
+		reset();
+		this.buffer = buffer;
+		if (buffer.limit() < DnsWireUtils.HEADER_LENGTH) {
+			return false;
+		}
+		id = DnsWireUtils.readUnsignedShort(buffer, DnsWireUtils.ID_OFFSET);
+		flags = DnsWireUtils.readUnsignedShort(buffer, DnsWireUtils.FLAGS_OFFSET);
+		qdCount = DnsWireUtils.readUnsignedShort(buffer, DnsWireUtils.QDCOUNT_OFFSET);
+		anCount = DnsWireUtils.readUnsignedShort(buffer, DnsWireUtils.ANCOUNT_OFFSET);
+		nsCount = DnsWireUtils.readUnsignedShort(buffer, DnsWireUtils.NSCOUNT_OFFSET);
+		arCount = DnsWireUtils.readUnsignedShort(buffer, DnsWireUtils.ARCOUNT_OFFSET);
+		if (qdCount != 1) {
+			return false;
+		}
+		nameEnd = DnsWireUtils.skipName(buffer, DnsWireUtils.HEADER_LENGTH);
+		if (nameEnd < 0 || nameEnd + 4 > buffer.limit()) {
+			return false;
+		}
+		qType = DnsWireUtils.readUnsignedShort(buffer, nameEnd);
+		qClass = DnsWireUtils.readUnsignedShort(buffer, nameEnd + 2);
+		valid = readRecords(nameEnd + 4);
+		return valid;
+	}
+
+	private boolean readRecords(final int offset) {
+		int position = offset;
+		final int total = anCount + nsCount + arCount;
+		for (int i = 0; i < total; i++) {
+			final int owner = position;
+			position = DnsWireUtils.skipName(buffer, position);
+			if (position < 0 || position + RECORD_FIXED_LENGTH > buffer.limit()) {
+				return false;
+			}
+			final int type = DnsWireUtils.readUnsignedShort(buffer, position);
+			if (type == DnsWireUtils.TYPE_OPT && i >= anCount + nsCount
+					&& optOffset < 0) {
+				optOffset = owner;
+				udpPayloadSize = DnsWireUtils.readUnsignedShort(buffer, position + 2);
+				extendedRCode = buffer.get(position + 4) & 0xff;
+				ednsVersion = buffer.get(position + 5) & 0xff;
+				ednsFlags = DnsWireUtils.readUnsignedShort(buffer, position + 6);
+			}
+			position += RECORD_FIXED_LENGTH
+					+ DnsWireUtils.readUnsignedShort(buffer, position + 8);
+			if (position > buffer.limit()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void reset() {
+		buffer = null;
+		valid = false;
+		id = flags = qdCount = anCount = nsCount = arCount = 0;
+		nameEnd = -1;
+		qType = qClass = 0;
+		qName = null;
+		optOffset = -1;
+		udpPayloadSize = extendedRCode = ednsVersion = ednsFlags = 0;
+	}
+
+	public boolean isValid() {
+		return valid;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public boolean isResponse() {
+		return (flags & FLAG_QR) != 0;
+	}
+
+	public int getOpcode() {
+		return (flags >>> OPCODE_SHIFT) & 0x0f;
+	}
+
+	public int getQdCount() {
+		return qdCount;
+	}
+
+	public int getAnCount() {
+		return anCount;
+	}
+
+	public int getNsCount() {
+		return nsCount;
+	}
+
+	public int getArCount() {
+		return arCount;
+	}
+
+	/**
+	 * @return offset right after the question name
+	 */
+	public int getNameEnd() {
+		return nameEnd;
+	}
+
+	/**
+	 * @return offset right after QCLASS
+	 */
+	public int getQuestionEnd() {
+		return nameEnd + 4;
+	}
+
+	public int getQType() {
+		return qType;
+	}
+
+	public int getQClass() {
+		return qClass;
+	}
+
+	/**
+	 * The question name as text with the trailing dot, decoded on first use.
+	 *
+	 * @return name, or null if the question name is compressed
+	 */
+	public String getQName() {
+		if (Objects.isNull(qName) && valid) {
+			qName = DnsWireUtils.readQuestionName(buffer);
+		}
+		return qName;
+	}
+
+	public boolean hasOpt() {
+		return optOffset >= 0;
+	}
+
+	public int getOptOffset() {
+		return optOffset;
+	}
+
+	/**
+	 * @return requestor's UDP payload size from OPT, 0 without EDNS
+	 */
+	public int getUdpPayloadSize() {
+		return udpPayloadSize;
+	}
+
+	public int getExtendedRCode() {
+		return extendedRCode;
+	}
+
+	public int getEdnsVersion() {
+		return ednsVersion;
+	}
+
+	public int getEdnsFlags() {
+		return ednsFlags;
+	}
+
+	public boolean isDnssecOk() {
+		return (ednsFlags & EDNS_FLAG_DO) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return "MessageReader{" + "valid=" + valid + ", id=" + id + ", flags=" + flags
+				+ ", qName='" + getQName() + '\'' + ", qType=" + qType + ", qClass="
+				+ qClass + ", udpPayloadSize=" + udpPayloadSize + '}';
+	}
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.conf.nacos.dns.utils.DnsWireUtils;
+
+/**
+ * Writes a response straight into the buffer that holds the query, the client's header
+ * and question are kept in place and records are appended after them. Owner names and
+ * names inside rdata are compressed against every name already written (RFC 1035
+ * 4.1.4), so a record owned by the question name costs two bytes of owner.
+ *
+ * <p>
+ * A record is written with {@link #beginRecord} ... {@link #endRecord()}. When it does
+ * not fit under the size limit it is rolled back as a whole and {@link #isTruncated()}
+ * becomes true. One writer belongs to one {@link com.conf.nacos.dns.transport.Packet}
+ * and is not thread safe.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class MessageWriter {
+
+	public static final int SECTION_ANSWER = 0;
+
+	public static final int SECTION_AUTHORITY = 1;
+
+	public static final int SECTION_ADDITIONAL = 2;
+
+	/**
+	 * An OPT record with no options: root owner, fixed part and empty rdata.
+	 */
+	public static final int OPT_RECORD_LENGTH = 11;
+
+	private static final int FLAG_QR = 0x8000;
+
+	private static final int OPCODE_MASK = 0x7800;
+
+	private static final int FLAG_AA = 0x0400;
+
+	private static final int FLAG_TC = 0x0200;
+
+	private static final int FLAG_RD = 0x0100;
+
+	private static final int FLAG_RA = 0x0080;
+
+	private static final int POINTER = 0xC000;
+
+	/**
+	 * Largest offset a compression pointer can reach.
+	 */
+	private static final int MAX_POINTER_OFFSET = 0x3FFF;
+
+	private static final int MAX_LABEL_LENGTH = 63;
+
+	/**
+	 * Offsets of the names written so far, one per label suffix.
+	 */
+	private final int[] names = new int[64];
+
+	private final int[] counts = new int[3];
+
+	private int nameCount;
+
+	private ByteBuffer buffer;
+
+	private int limit;
+
+	private int section;
+
+	private int recordStart = -1;
+
+	private int rdLengthOffset;
+
+	private boolean overflow;
+
+	private boolean truncated;
+
+	/**
+	 * Turn the query read by {@code request} into the head of a response: QR and RA are
+	 * set, opcode and RD are echoed, the counts are cleared and the cursor is placed right
+	 * after the question.
+	 *
+	 * @param buffer the query, header at index 0
+	 * @param request a valid reader over the same buffer
+	 * @param rCode response code
+	 * @param maxLength largest message the client accepts, capped by the buffer
+	 */
+	public void beginResponse(final ByteBuffer buffer, final MessageReader request,
+			final int rCode, final int maxLength) {
+		this.buffer = buffer;
+		this.limit = Math.min(buffer.capacity(), maxLength);
+		this.section = SECTION_ANSWER;
+		this.recordStart = -1;
+		this.overflow = false;
+		this.truncated = false;
+		this.nameCount = 0;
+		Arrays.fill(counts, 0);
+		buffer.limit(buffer.capacity());
+		buffer.position(request.getQuestionEnd());
+		buffer.putShort(DnsWireUtils.FLAGS_OFFSET, (short) (FLAG_QR
+				| (request.getFlags() & (OPCODE_MASK | FLAG_RD)) | FLAG_RA
+				| (rCode & 0x0f)));
+		rememberQuestion();
+	}
+
+	/**
+	 * Mark the response truncated even if no record was left out, e.g. when a relayed
+	 * answer is too large for the client.
+	 */
+	public void setTruncated() {
+		truncated = true;
+	}
+
+	/**
+	 * Do not set TC even though records were left out, e.g. over TCP.
+	 */
+	public void clearTruncated() {
+		truncated = false;
+	}
+
+	public void setAuthoritative(final boolean authoritative) {
+		final int flags = DnsWireUtils.readUnsignedShort(buffer, DnsWireUtils.FLAGS_OFFSET);
+		buffer.putShort(DnsWireUtils.FLAGS_OFFSET,
+				(short) (authoritative ? flags | FLAG_AA : flags & ~FLAG_AA));
+	}
+
+	/**
+	 * Start a record, sections must be written in order.
+	 *
+	 * @param section {@link #SECTION_ANSWER}, {@link #SECTION_AUTHORITY} or
+	 * {@link #SECTION_ADDITIONAL}
+	 * @param name owner name, with or without the trailing dot
+	 * @param type record type
+	 * @param dClass record class
+	 * @param ttl ttl in seconds
+	 */
+	public void beginRecord(final int section, final String name, final int type,
+			final int dClass, final long ttl) {
+		startRecord(section);
+		putName(name, true);
+		putShort(type);
+		putShort(dClass);
+		putInt((int) ttl);
+		rdLengthOffset = buffer.position();
+		putShort(0);
+	}
+
+	/**
+	 * Finish the record started by {@link #beginRecord}.
+	 *
+	 * @return false if the record did not fit and was rolled back
+	 */
+	public boolean endRecord() {
+		if (recordStart < 0) {
+			throw new IllegalStateException("no record is being written");
+		}
+		if (overflow) {
+			rollback();
+			return false;
+		}
+		buffer.putShort(rdLengthOffset,
+				(short) (buffer.position() - rdLengthOffset - 2));
+		counts[section]++;
+		recordStart = -1;
+		return true;
+	}
+
+	/**
+	 * Append a complete, already encoded record.
+	 *
+	 * @param section target section
+	 * @param record wire bytes of one resource record
+	 * @return false if the record did not fit
+	 */
+	public boolean writeRecord(final int section, final byte[] record) {
+		startRecord(section);
+		put(record);
+		if (overflow) {
+			rollback();
+			return false;
+		}
+		counts[section]++;
+		recordStart = -1;
+		return true;
+	}
+
+	/**
+	 * Append an EDNS(0) OPT pseudo record to the additional section.
+	 *
+	 * @param udpPayloadSize largest UDP message this server accepts
+	 * @param rCode the full response code, its upper 8 bits are written here
+	 * @param ednsFlags flags such as DO
+	 * @return false if the record did not fit
+	 */
+	public boolean writeOpt(final int udpPayloadSize, final int rCode,
+			final int ednsFlags) {
+		beginRecord(SECTION_ADDITIONAL, ".", DnsWireUtils.TYPE_OPT, udpPayloadSize,
+				((rCode >>> 4) & 0xff) << 24 | (ednsFlags & 0xffff));
+		return endRecord();
+	}
+
+	public void putShort(final int value) {
+		if (ensure(2)) {
+			buffer.putShort((short) value);
+		}
+	}
+
+	public void putInt(final int value) {
+		if (ensure(4)) {
+			buffer.putInt(value);
+		}
+	}
+
+	public void put(final byte[] data) {
+		if (ensure(data.length)) {
+			buffer.put(data);
+		}
+	}
+
+	/**
+	 * Write a domain name, reusing the longest suffix already present in the message.
+	 *
+	 * @param name dotted name, with or without the trailing dot
+	 * @param compress false for the rdata fields that must not be compressed
+	 */
+	public void putName(final String name, final boolean compress) {
+		final int end = name.endsWith(".") ? name.length() - 1 : name.length();
+		// labels of this name are not complete yet, never point into them
+		final int known = nameCount;
+		int from = 0;
+		while (from < end) {
+			if (compress) {
+				final int pointer = findSuffix(name, from, end, known);
+				if (pointer >= 0) {
+					putShort(POINTER | pointer);
+					return;
+				}
+			}
+			int dot = name.indexOf('.', from);
+			if (dot < 0 || dot > end) {
+				dot = end;
+			}
+			final int len = dot - from;
+			if (len == 0 || len > MAX_LABEL_LENGTH) {
+				throw new IllegalArgumentException("invalid domain name : " + name);
+			}
+			if (!ensure(len + 1)) {
+				return;
+			}
+			remember(buffer.position());
+			buffer.put((byte) len);
+			for (int i = from; i < dot; i++) {
+				buffer.put((byte) name.charAt(i));
+			}
+			from = dot + 1;
+		}
+		if (ensure(1)) {
+			buffer.put((byte) 0);
+		}
+	}
+
+	/**
+	 * Write the counts and flip the buffer, it is then ready to be sent.
+	 *
+	 * @return the response
+	 */
+	public ByteBuffer finish() {
+		if (recordStart >= 0) {
+			rollback();
+		}
+		if (truncated) {
+			final int flags = DnsWireUtils.readUnsignedShort(buffer,
+					DnsWireUtils.FLAGS_OFFSET);
+			buffer.putShort(DnsWireUtils.FLAGS_OFFSET, (short) (flags | FLAG_TC));
+		}
+		buffer.putShort(DnsWireUtils.ANCOUNT_OFFSET, (short) counts[SECTION_ANSWER]);
+		buffer.putShort(DnsWireUtils.NSCOUNT_OFFSET, (short) counts[SECTION_AUTHORITY]);
+		buffer.putShort(DnsWireUtils.ARCOUNT_OFFSET, (short) counts[SECTION_ADDITIONAL]);
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * @return true once a record had to be left out
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public int getCount(final int section) {
+		return counts[section];
+	}
+
+	/**
+	 * @return bytes still free under the size limit
+	 */
+	public int remaining() {
+		return limit - buffer.position();
+	}
+
+	/**
+	 * Lower the size limit, records already written are kept.
+	 *
+	 * @param maxLength new largest message size
+	 */
+	public void limit(final int maxLength) {
+		this.limit = Math.min(Math.max(maxLength, buffer.position()), buffer.capacity());
+	}
+
+	private void startRecord(final int section) {
+		if (section < this.section) {
+			throw new IllegalStateException("sections must be written in order");
+		}
+		if (recordStart >= 0) {
+			throw new IllegalStateException("the previous record is not finished");
+		}
+		this.section = section;
+		this.recordStart = buffer.position();
+		this.overflow = false;
+	}
+
+	private void rollback() {
+		buffer.position(recordStart);
+		while (nameCount > 0 && names[nameCount - 1] >= recordStart) {
+			nameCount--;
+		}
+		recordStart = -1;
+		overflow = false;
+		// additional data left out does not make the answer incomplete, RFC 2181 9
+		if (section != SECTION_ADDITIONAL) {
+			truncated = true;
+		}
+	}
+
+	private boolean ensure(final int length) {
+		if (overflow || buffer.position() + length > limit) {
+			overflow = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Every label suffix of the question name can be pointed at.
+	 */
+	private void rememberQuestion() {
+		int position = DnsWireUtils.HEADER_LENGTH;
+		for (;;) {
+			final int len = buffer.get(position) & 0xff;
+			if (len == 0 || (len & 0xC0) != 0) {
+				return;
+			}
+			remember(position);
+			position += len + 1;
+		}
+	}
+
+	private void remember(final int offset) {
+		if (offset <= MAX_POINTER_OFFSET && nameCount < names.length) {
+			names[nameCount++] = offset;
+		}
+	}
+
+	private int findSuffix(final String name, final int from, final int end,
+			final int known) {
+		for (int i = 0; i < known; i++) {
+			if (nameEquals(names[i], name, from, end)) {
+				return names[i];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compare the wire name at {@code offset}, following pointers, with the labels of
+	 * {@code name} between {@code from} and {@code end}, ignoring ASCII case.
+	 */
+	private boolean nameEquals(final int offset, final String name, final int from,
+			final int end) {
+		int position = offset;
+		int index = from;
+		// bounds the walk on a question with a pointer loop
+		int jumps = 0;
+		for (;;) {
+			final int len = buffer.get(position) & 0xff;
+			if ((len & 0xC0) == 0xC0) {
+				if (++jumps > MAX_LABEL_LENGTH) {
+					return false;
+				}
+				position = ((len & 0x3f) << 8) | (buffer.get(position + 1) & 0xff);
+				continue;
+			}
+			if (len == 0) {
+				return index >= end;
+			}
+			if (index >= end) {
+				return false;
+			}
+			int dot = name.indexOf('.', index);
+			if (dot < 0 || dot > end) {
+				dot = end;
+			}
+			if (dot - index != len) {
+				return false;
+			}
+			for (int i = 0; i < len; i++) {
+				if (DnsWireUtils.toLowerCase(buffer.get(position + 1 + i)) != DnsWireUtils
+						.toLowerCase((byte) name.charAt(index + i))) {
+					return false;
+				}
+			}
+			index = dot + 1;
+			position += len + 1;
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.constants;
+
+/**
+ * Which address families an instance can be answered with, classified once when the
+ * instance is received from nacos.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public enum AddressFamily {
+
+	/**
+	 * The ip could not be parsed or resolved, the instance is never answered.
+	 */
+	NONE(false, false),
+
+	IPV4(true, false),
+
+	IPV6(false, true),
+
+	/**
+	 * A host name resolving to addresses of both families.
+	 */
+	DUAL(true, true),
+
+	;
+
+	private final boolean ipv4;
+
+	private final boolean ipv6;
+
+	AddressFamily(boolean ipv4, boolean ipv6) {
+		this.ipv4 = ipv4;
+		this.ipv6 = ipv6;
+	}
+
+	public boolean hasIpv4() {
+		return ipv4;
+	}
+
+	public boolean hasIpv6() {
+		return ipv6;
+	}
+
+	public static AddressFamily of(boolean ipv4, boolean ipv6) {
+		return ipv4 ? (ipv6 ? DUAL : IPV4) : (ipv6 ? IPV6 : NONE);
+	}
+
+}
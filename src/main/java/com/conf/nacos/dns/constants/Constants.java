@@ -47,6 +47,18 @@ public final class Constants {
 
 	public static final String WEIGHT_LOAD_BALANCER = "WeightLoadBalancer";
 
+	/**
+	 * Nacos answers are never cached by clients, the next lookup picks again.
+	 */
+	public static final long NACOS_ANSWER_TTL = 0L;
+
+	/**
+	 * Instance metadata overriding the priority and weight of its SRV record.
+	 */
+	public static final String SRV_PRIORITY_METADATA = "dns.srv.priority";
+
+	public static final String SRV_WEIGHT_METADATA = "dns.srv.weight";
+
 	public static final String BYTE_BUFFER_SIZE = "byte-buffer.size";
 
 }
@@ -46,17 +46,39 @@ public class RandomLoadBalancer implements LoadBalancer {
 
 	@Override
 	public void recordChange(List<InstanceRecord> recordList) {
-		List<InstanceRecord> old = instances;
+		// readers may still hold the old list, leave it to the gc
 		instances = recordList;
-		old.clear();
 	}
 
 	@Override
 	public InstanceRecord selectOne() {
-		int size = instances.size();
+		List<InstanceRecord> copy = instances;
+		int size = copy.size();
+		if (size == 0) {
+			return null;
+		}
 		ThreadLocalRandom random = ThreadLocalRandom.current();
 		int index = random.nextInt(size);
-		return instances.get(index);
+		return copy.get(index);
+	}
+
+	/**
+	 * A random starting point, then the following instances in list order.
+	 */
+	@Override
+	public List<InstanceRecord> select(final int count) {
+		List<InstanceRecord> copy = instances;
+		int size = copy.size();
+		int n = Math.min(count, size);
+		List<InstanceRecord> selected = new ArrayList<>(n);
+		if (n == 0) {
+			return selected;
+		}
+		int start = ThreadLocalRandom.current().nextInt(size);
+		for (int i = 0; i < n; i++) {
+			selected.add(copy.get((start + i) % size));
+		}
+		return selected;
 	}
 
 	@Override
@@ -48,21 +48,40 @@ public class RoundRobinLoadBalancer implements LoadBalancer {
 
 	@Override
 	public void recordChange(List<InstanceRecord> recordList) {
-		List<InstanceRecord> old = instances;
+		// readers may still hold the old list, leave it to the gc
 		instances = recordList;
-		old.clear();
 	}
 
 	@Override
 	public InstanceRecord selectOne() {
 		List<InstanceRecord> copy = instances;
-		int currentIndex = index.getAndIncrement();
-		if (index.get() == copy.size() - 1) {
-			index.lazySet(0);
+		int size = copy.size();
+		if (size == 0) {
+			return null;
 		}
+		int currentIndex = Math.floorMod(index.getAndIncrement(), size);
 		return copy.get(currentIndex);
 	}
 
+	/**
+	 * The next instance in turn, then the ones after it.
+	 */
+	@Override
+	public List<InstanceRecord> select(final int count) {
+		List<InstanceRecord> copy = instances;
+		int size = copy.size();
+		int n = Math.min(count, size);
+		List<InstanceRecord> selected = new ArrayList<>(n);
+		if (n == 0) {
+			return selected;
+		}
+		int start = Math.floorMod(index.getAndIncrement(), size);
+		for (int i = 0; i < n; i++) {
+			selected.add(copy.get((start + i) % size));
+		}
+		return selected;
+	}
+
 	@Override
 	public String name() {
 		return "RoundRobinLoadBalancer";
@@ -30,8 +30,8 @@
 
 package com.conf.nacos.dns.loadbalancer;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.PriorityQueue;
 
 import com.conf.nacos.dns.LoadBalancer;
 import com.conf.nacos.dns.pojo.InstanceRecord;
@@ -41,24 +41,30 @@ import com.conf.nacos.dns.pojo.InstanceRecord;
  */
 public class WeightLoadBalancer implements LoadBalancer {
 
-	private volatile PriorityQueue<InstanceRecord> records = new PriorityQueue<>(
-			(o1, o2) -> (int) (o2.getWeight() - o1.getWeight()));
+	private volatile List<InstanceRecord> ordered = new ArrayList<>();
 
 	@Override
 	public void recordChange(List<InstanceRecord> recordList) {
-		PriorityQueue<InstanceRecord> old = records;
+		List<InstanceRecord> sorted = new ArrayList<>(recordList);
+		sorted.sort((o1, o2) -> Double.compare(o2.getWeight(), o1.getWeight()));
 
-		PriorityQueue<InstanceRecord> copy = new PriorityQueue<>(
-				(o1, o2) -> (int) (o2.getWeight() - o1.getWeight()));
-		copy.addAll(recordList);
-
-		records = copy;
-		old.clear();
+		ordered = sorted;
+		// readers may still hold the old list, leave it to the gc
 	}
 
 	@Override
 	public InstanceRecord selectOne() {
-		return records.peek();
+		List<InstanceRecord> copy = ordered;
+		return copy.isEmpty() ? null : copy.get(0);
+	}
+
+	/**
+	 * The heaviest instances first.
+	 */
+	@Override
+	public List<InstanceRecord> select(final int count) {
+		List<InstanceRecord> copy = ordered;
+		return new ArrayList<>(copy.subList(0, Math.min(count, copy.size())));
 	}
 
 	@Override
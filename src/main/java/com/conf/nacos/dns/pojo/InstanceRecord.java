@@ -29,8 +29,15 @@
  */
 package com.conf.nacos.dns.pojo;
 
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+
+import com.conf.nacos.dns.constants.AddressFamily;
+import com.google.common.net.InetAddresses;
 
 /**
  * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
@@ -47,6 +54,21 @@ public class InstanceRecord {
 	 */
 	private final int port;
 
+	/**
+	 * the ip as an IPv4 literal, packed, null if it is not one
+	 */
+	private final byte[] ipv4Address;
+
+	/**
+	 * the ip as an IPv6 literal, packed, null if it is not one
+	 */
+	private final byte[] ipv6Address;
+
+	/**
+	 * the ip parsed once, null if it is not an ip literal, e.g. a host name
+	 */
+	private final InetAddress address;
+
 	/**
 	 * The last time the instance was accessed
 	 */
@@ -75,6 +97,20 @@ public class InstanceRecord {
 	public InstanceRecord(String ip, int port) {
 		this.ip = ip;
 		this.port = port;
+		// a literal is parsed without a lookup, resolving a host name here would block
+		// the nacos listener that builds the records
+		InetAddress parsed = null;
+		if (Objects.nonNull(ip) && !ip.isEmpty()) {
+			try {
+				parsed = InetAddresses.forString(ip);
+			}
+			catch (IllegalArgumentException ignore) {
+				// answered with no address, see getFamily()
+			}
+		}
+		this.ipv4Address = parsed instanceof Inet4Address ? parsed.getAddress() : null;
+		this.ipv6Address = parsed instanceof Inet6Address ? parsed.getAddress() : null;
+		this.address = parsed;
 	}
 
 	public static RecordBuilder builder() {
@@ -93,6 +129,28 @@ public class InstanceRecord {
 		return port;
 	}
 
+	public AddressFamily getFamily() {
+		return AddressFamily.of(ipv4Address != null, ipv6Address != null);
+	}
+
+	/**
+	 * @return 4 bytes ready to be copied into an A record, or null
+	 */
+	public byte[] getIpv4Address() {
+		return ipv4Address;
+	}
+
+	/**
+	 * @return 16 bytes ready to be copied into an AAAA record, or null
+	 */
+	public byte[] getIpv6Address() {
+		return ipv6Address;
+	}
+
+	public InetAddress getAddress() {
+		return address;
+	}
+
 	public double getWeight() {
 		return weight;
 	}
@@ -112,8 +170,9 @@ public class InstanceRecord {
 	@Override
 	public String toString() {
 		return "InstanceRecord{" + "lastAccessTime=" + lastAccessTime + ", ip='" + ip
-				+ '\'' + ", port=" + port + ", weight=" + weight + ", healthy=" + healthy
-				+ ", enabled=" + enabled + ", metadata=" + metadata + '}';
+				+ '\'' + ", port=" + port + ", family=" + getFamily() + ", weight=" + weight
+				+ ", healthy=" + healthy + ", enabled=" + enabled + ", metadata="
+				+ metadata + '}';
 	}
 
 	public static final class RecordBuilder {
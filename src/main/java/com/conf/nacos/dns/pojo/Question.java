@@ -35,6 +35,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.conf.nacos.dns.utils.BinaryOperator;
+import com.conf.nacos.dns.utils.DnsWireUtils;
 import com.google.common.base.Joiner;
 
 /**
@@ -151,13 +152,15 @@ public class Question {
 	}
 
 	Question(ByteBuffer buffer) {
-		int currentPosition = buffer.position();
-		buffer.position(buffer.limit() - 4);
+		// QTYPE follows the name, not the end of the message which may carry more
+		// sections such as an EDNS OPT record
+		final int nameEnd = DnsWireUtils.skipName(buffer, buffer.position());
+		if (nameEnd < 0 || nameEnd + 4 > buffer.limit()) {
+			throw new IllegalArgumentException("malformed question section");
+		}
+		initQName(buffer, nameEnd);
 		initQType(buffer);
 		initQClass(buffer);
-
-		buffer.position(currentPosition);
-		initQName(buffer);
 	}
 
 	public Question(String qName, QType qType, int qClass) {
@@ -180,8 +183,8 @@ public class Question {
 		this.qClass = BinaryOperator.byteArrayToInt(qClassArr);
 	}
 
-	private void initQName(ByteBuffer buffer) {
-		byte[] qNameArr = new byte[buffer.limit() - 4 - 12 + 1];
+	private void initQName(ByteBuffer buffer, int nameEnd) {
+		byte[] qNameArr = new byte[nameEnd - buffer.position()];
 		buffer.get(qNameArr);
 
 		List<String> list = new ArrayList<>();
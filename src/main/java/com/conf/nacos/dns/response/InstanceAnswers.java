@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.response;
+
+import com.conf.nacos.dns.utils.DnsWireUtils;
+
+/**
+ * The pre-encoded records of one instance. Answers are owned by a pointer to the
+ * question name, the target is the name the SRV record points at and the glue records
+ * are written for.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class InstanceAnswers {
+
+	private final String target;
+
+	private final byte[] ipv4Address;
+
+	private final byte[] ipv6Address;
+
+	private final byte[] ipv4Answer;
+
+	private final byte[] ipv6Answer;
+
+	private final byte[] srvAnswer;
+
+	InstanceAnswers(String target, byte[] ipv4Address, byte[] ipv6Address,
+			byte[] ipv4Answer, byte[] ipv6Answer, byte[] srvAnswer) {
+		this.target = target;
+		this.ipv4Address = ipv4Address;
+		this.ipv6Address = ipv6Address;
+		this.ipv4Answer = ipv4Answer;
+		this.ipv6Answer = ipv6Answer;
+		this.srvAnswer = srvAnswer;
+	}
+
+	/**
+	 * @param qType {@link DnsWireUtils#TYPE_A}, {@link DnsWireUtils#TYPE_AAAA} or
+	 * {@link DnsWireUtils#TYPE_SRV}
+	 * @return the encoded answer, or null if the instance has none of that type
+	 */
+	public byte[] answerOf(final int qType) {
+		switch (qType) {
+		case DnsWireUtils.TYPE_A:
+			return ipv4Answer;
+		case DnsWireUtils.TYPE_AAAA:
+			return ipv6Answer;
+		case DnsWireUtils.TYPE_SRV:
+			return srvAnswer;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return SRV target with the trailing dot, e.g. {@code 10-0-0-1.order.}
+	 */
+	public String getTarget() {
+		return target;
+	}
+
+	/**
+	 * @return 4 address bytes for an A glue record, or null
+	 */
+	public byte[] getIpv4Address() {
+		return ipv4Address;
+	}
+
+	/**
+	 * @return 16 address bytes for an AAAA glue record, or null
+	 */
+	public byte[] getIpv6Address() {
+		return ipv6Address;
+	}
+
+}
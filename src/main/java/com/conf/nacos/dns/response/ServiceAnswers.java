@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.response;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+import com.conf.nacos.dns.constants.Constants;
+import com.conf.nacos.dns.pojo.InstanceRecord;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pre-encoded answer records of one service, built once per instance change. Each
+ * answer is a complete resource record whose owner points at the question name, so a
+ * response is the client's own header and question followed by one copy of it.
+ *
+ * <p>
+ * Every instance also gets a target name, {@code <ip with dashes>.<service domain>},
+ * which its SRV record points at and which is answered with the instance address.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class ServiceAnswers {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ServiceAnswers.class);
+
+	private static final int MAX_SRV_VALUE = 0xffff;
+
+	public static final ServiceAnswers EMPTY = new ServiceAnswers(Collections.emptyMap(),
+			Collections.emptyMap());
+
+	private final Map<InstanceRecord, InstanceAnswers> byRecord;
+
+	/**
+	 * Keyed by the lower-cased first label of the target name.
+	 */
+	private final Map<String, InstanceAnswers> byTarget;
+
+	private ServiceAnswers(Map<InstanceRecord, InstanceAnswers> byRecord,
+			Map<String, InstanceAnswers> byTarget) {
+		this.byRecord = byRecord;
+		this.byTarget = byTarget;
+	}
+
+	/**
+	 * Encode the answers of every instance, copying the address bytes the
+	 * {@link InstanceRecord} packed when it was built.
+	 *
+	 * @param domain service domain with the trailing dot
+	 * @param records instances of the service
+	 * @param ttl answer ttl in seconds
+	 * @return {@link ServiceAnswers}
+	 */
+	public static ServiceAnswers build(final String domain,
+			final List<InstanceRecord> records, final long ttl) {
+		final Map<InstanceRecord, InstanceAnswers> byRecord = new IdentityHashMap<>();
+		final Map<String, InstanceAnswers> byTarget = new HashMap<>();
+		for (InstanceRecord record : records) {
+			final String ip = record.getIp();
+			final byte[] ipv4 = record.getIpv4Address();
+			final byte[] ipv6 = record.getIpv6Address();
+			if (ipv4 == null && ipv6 == null) {
+				LOGGER.warn("instance ip {} is not an ip literal, it is not answered", ip);
+				continue;
+			}
+			final String label = ip.replace('.', '-').replace(':', '-')
+					.toLowerCase(Locale.ROOT);
+			final String target = label + '.' + domain;
+			final InstanceAnswers answers = new InstanceAnswers(target, ipv4, ipv6,
+					ipv4 == null ? null : encode(DnsWireUtils.TYPE_A, ttl, ipv4),
+					ipv6 == null ? null : encode(DnsWireUtils.TYPE_AAAA, ttl, ipv6),
+					encode(DnsWireUtils.TYPE_SRV, ttl, srvData(record, target)));
+			byRecord.put(record, answers);
+			byTarget.putIfAbsent(label, answers);
+		}
+		return new ServiceAnswers(byRecord, byTarget);
+	}
+
+	/**
+	 * Priority and weight come from the instance metadata when set, otherwise priority is
+	 * 0 and weight is the nacos weight times 100.
+	 */
+	private static byte[] srvData(final InstanceRecord record, final String target) {
+		final Map<String, String> metadata = record.getMetadata();
+		final int priority = metadataValue(metadata, Constants.SRV_PRIORITY_METADATA, 0);
+		final int weight = metadataValue(metadata, Constants.SRV_WEIGHT_METADATA,
+				(int) Math.round(record.getWeight() * 100));
+		final byte[] name = DnsWireUtils.encodeName(target);
+		final ByteBuffer data = ByteBuffer.allocate(6 + name.length);
+		data.putShort((short) priority);
+		data.putShort((short) weight);
+		data.putShort((short) record.getPort());
+		data.put(name);
+		return data.array();
+	}
+
+	private static int metadataValue(final Map<String, String> metadata,
+			final String key, final int defaultValue) {
+		int value = defaultValue;
+		final String text = Objects.isNull(metadata) ? null : metadata.get(key);
+		if (Objects.nonNull(text)) {
+			try {
+				value = Integer.parseInt(text.trim());
+			}
+			catch (NumberFormatException ex) {
+				LOGGER.warn("metadata {}={} is not a number", key, text);
+			}
+		}
+		return Math.max(0, Math.min(MAX_SRV_VALUE, value));
+	}
+
+	private static byte[] encode(final int type, final long ttl, final byte[] data) {
+		final ByteBuffer answer = ByteBuffer.allocate(12 + data.length);
+		answer.putShort((short) DnsWireUtils.QUESTION_POINTER);
+		answer.putShort((short) type);
+		answer.putShort((short) DnsWireUtils.CLASS_IN);
+		answer.putInt((int) ttl);
+		answer.putShort((short) data.length);
+		answer.put(data);
+		return answer.array();
+	}
+
+	/**
+	 * @param record a selected instance
+	 * @param qType {@link DnsWireUtils#TYPE_A}, {@link DnsWireUtils#TYPE_AAAA} or
+	 * {@link DnsWireUtils#TYPE_SRV}
+	 * @return the encoded answer, or null if the instance has no record of that type
+	 */
+	public byte[] answerOf(final InstanceRecord record, final int qType) {
+		final InstanceAnswers answers = byRecord.get(record);
+		return Objects.isNull(answers) ? null : answers.answerOf(qType);
+	}
+
+	/**
+	 * @param record a selected instance
+	 * @return its records, or null if it could not be encoded
+	 */
+	public InstanceAnswers instanceOf(final InstanceRecord record) {
+		return byRecord.get(record);
+	}
+
+	/**
+	 * @return true if no instance has an address
+	 */
+	public boolean isEmpty() {
+		return byRecord.isEmpty();
+	}
+
+	/**
+	 * @param label first label of a SRV target name
+	 * @return whether an instance of the service has this target name
+	 */
+	public boolean hasTarget(final String label) {
+		return byTarget.containsKey(label.toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * The address answer of the instance a SRV target names.
+	 *
+	 * @param label first label of the target name
+	 * @param qType {@link DnsWireUtils#TYPE_A} or {@link DnsWireUtils#TYPE_AAAA}
+	 * @return the encoded answer, or null
+	 */
+	public byte[] targetAnswer(final String label, final int qType) {
+		final InstanceAnswers answers = byTarget.get(label.toLowerCase(Locale.ROOT));
+		return Objects.isNull(answers) || qType == DnsWireUtils.TYPE_SRV ? null
+				: answers.answerOf(qType);
+	}
+
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import com.alibaba.nacos.common.utils.ExceptionUtil;
+import com.conf.nacos.dns.pojo.InstanceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The last known instances of every cached service, appended to a memory-mapped file as
+ * they change and replayed at boot, so the server can answer before nacos is reachable.
+ *
+ * <p>
+ * The file is a header, {@code magic, version, end}, followed by entries
+ * {@code length, crc32, op, name, payload}; {@code end} is only moved past an entry once
+ * it is completely written. A later entry of a name replaces the earlier ones. When the
+ * file is full the live entries are written to a new file which then replaces it.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class ServiceSnapshot implements Closeable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ServiceSnapshot.class);
+
+	private static final int MAGIC = 0x4E44534E;
+
+	private static final int VERSION = 1;
+
+	private static final int END_OFFSET = 8;
+
+	private static final int HEADER_LENGTH = 16;
+
+	/**
+	 * length and crc32 of an entry.
+	 */
+	private static final int ENTRY_PREFIX = 8;
+
+	private static final byte OP_PUT = 1;
+
+	private static final byte OP_REMOVE = 2;
+
+	private static final int FLAG_HEALTHY = 1;
+
+	private static final int FLAG_ENABLED = 2;
+
+	/**
+	 * {@code sun.misc.Unsafe} and its {@code invokeCleaner}, JDK 9+; null on JDK 8 where
+	 * the buffer's own cleaner is used.
+	 */
+	private static final Object UNSAFE;
+
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+		}
+		catch (Throwable ignore) {
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private final Path path;
+
+	private final int capacity;
+
+	/**
+	 * The encoded entry of every live name, what a compaction writes.
+	 */
+	private final Map<String, byte[]> live = new LinkedHashMap<>();
+
+	private FileChannel channel;
+
+	private MappedByteBuffer buffer;
+
+	private int end;
+
+	/**
+	 * Set once the snapshot is full, closed or its mapping is gone, nothing is written
+	 * after that.
+	 */
+	private boolean disabled;
+
+	private ServiceSnapshot(Path path, int capacity) {
+		this.path = path;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Open or create the snapshot and replay it.
+	 *
+	 * @param file snapshot file
+	 * @param capacity size of the mapping in bytes
+	 * @return {@link ServiceSnapshot}
+	 * @throws IOException the file can not be opened
+	 */
+	public static ServiceSnapshot open(final String file, final int capacity)
+			throws IOException {
+		final Path path = Paths.get(file).toAbsolutePath();
+		Files.createDirectories(path.getParent());
+		final ServiceSnapshot snapshot = new ServiceSnapshot(path,
+				Math.max(HEADER_LENGTH * 64, capacity));
+		snapshot.map();
+		snapshot.replay();
+		return snapshot;
+	}
+
+	private void map() throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				Math.max(capacity, channel.size()));
+	}
+
+	private void replay() {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			reset();
+			return;
+		}
+		final long committed = buffer.getLong(END_OFFSET);
+		int position = HEADER_LENGTH;
+		while (position + ENTRY_PREFIX <= committed) {
+			final int length = buffer.getInt(position);
+			if (length <= 0 || position + ENTRY_PREFIX + length > committed) {
+				break;
+			}
+			final byte[] entry = new byte[ENTRY_PREFIX + length];
+			final ByteBuffer slice = buffer.duplicate();
+			slice.position(position);
+			slice.get(entry);
+			if (crc(entry) != buffer.getInt(position + 4)) {
+				LOGGER.warn("snapshot {} is corrupted at {}, the rest is dropped", path,
+						position);
+				break;
+			}
+			final ByteBuffer reader = ByteBuffer.wrap(entry, ENTRY_PREFIX, length);
+			final byte op = reader.get();
+			final String name = readString(reader);
+			if (op == OP_PUT) {
+				live.put(name, entry);
+			}
+			else {
+				live.remove(name);
+			}
+			position += entry.length;
+		}
+		end = position;
+		buffer.putLong(END_OFFSET, end);
+	}
+
+	private void reset() {
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putLong(END_OFFSET, HEADER_LENGTH);
+		end = HEADER_LENGTH;
+		live.clear();
+	}
+
+	/**
+	 * @return the instances of every service in the snapshot
+	 */
+	public synchronized Map<String, List<InstanceRecord>> load() {
+		final Map<String, List<InstanceRecord>> services = new HashMap<>(live.size());
+		live.forEach((name, entry) -> {
+			try {
+				services.put(name, decode(entry));
+			}
+			catch (RuntimeException ex) {
+				LOGGER.warn("snapshot entry of {} can not be decoded : {}", name,
+						ExceptionUtil.getStackTrace(ex));
+			}
+		});
+		return services;
+	}
+
+	/**
+	 * Record the instances of a service, as received from nacos.
+	 *
+	 * @param serviceName service domain with the trailing dot
+	 * @param records its instances
+	 */
+	public synchronized void write(final String serviceName,
+			final List<InstanceRecord> records) {
+		try {
+			final byte[] entry = encode(OP_PUT, serviceName, records);
+			if (append(entry)) {
+				live.put(serviceName, entry);
+			}
+		}
+		catch (IOException ex) {
+			LOGGER.error("snapshot of {} can not be written : {}", serviceName,
+					ExceptionUtil.getStackTrace(ex));
+		}
+	}
+
+	/**
+	 * Forget a service, e.g. when it is evicted from the cache.
+	 *
+	 * @param serviceName service domain with the trailing dot
+	 */
+	public synchronized void remove(final String serviceName) {
+		if (!live.containsKey(serviceName)) {
+			return;
+		}
+		try {
+			if (append(encode(OP_REMOVE, serviceName, null))) {
+				live.remove(serviceName);
+			}
+		}
+		catch (IOException ex) {
+			LOGGER.error("snapshot of {} can not be removed : {}", serviceName,
+					ExceptionUtil.getStackTrace(ex));
+		}
+	}
+
+	private boolean append(final byte[] entry) throws IOException {
+		if (disabled) {
+			return false;
+		}
+		if (end + entry.length > buffer.capacity()) {
+			try {
+				compact();
+			}
+			catch (IOException ex) {
+				// the old mapping may be released already, it must not be written again
+				disabled = true;
+				throw ex;
+			}
+			if (end + entry.length > buffer.capacity()) {
+				disabled = true;
+				LOGGER.error("snapshot {} is full with {} services, no longer written",
+						path, live.size());
+				return false;
+			}
+		}
+		final ByteBuffer target = buffer.duplicate();
+		target.position(end);
+		target.put(entry);
+		end += entry.length;
+		// the entry is complete before it is committed
+		buffer.putLong(END_OFFSET, end);
+		return true;
+	}
+
+	/**
+	 * Write the live entries to a new file and move it over the snapshot, a crash leaves
+	 * either the old or the new file.
+	 */
+	private void compact() throws IOException {
+		final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long length = HEADER_LENGTH;
+			for (byte[] entry : live.values()) {
+				length += entry.length;
+			}
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+			header.putInt(MAGIC).putInt(VERSION).putLong(length).flip();
+			out.write(header);
+			for (byte[] entry : live.values()) {
+				out.write(ByteBuffer.wrap(entry));
+			}
+			out.force(true);
+		}
+		buffer.force();
+		unmap(buffer);
+		channel.close();
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		map();
+		end = (int) buffer.getLong(END_OFFSET);
+		LOGGER.info("snapshot {} compacted to {} services, {} bytes", path, live.size(),
+				end);
+	}
+
+	private static byte[] encode(final byte op, final String serviceName,
+			final List<InstanceRecord> records) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.writeByte(op);
+		writeString(out, serviceName);
+		if (op == OP_PUT) {
+			out.writeInt(records.size());
+			for (InstanceRecord record : records) {
+				writeString(out, record.getIp());
+				out.writeInt(record.getPort());
+				out.writeDouble(record.getWeight());
+				out.writeByte((record.isHealthy() ? FLAG_HEALTHY : 0)
+						| (record.isEnabled() ? FLAG_ENABLED : 0));
+				final Map<String, String> metadata = Objects.isNull(record.getMetadata())
+						? new HashMap<>()
+						: record.getMetadata();
+				out.writeInt(metadata.size());
+				for (Map.Entry<String, String> e : metadata.entrySet()) {
+					writeString(out, e.getKey());
+					writeString(out, e.getValue());
+				}
+			}
+		}
+		out.flush();
+		final byte[] entry = bytes.toByteArray();
+		final ByteBuffer prefix = ByteBuffer.wrap(entry);
+		prefix.putInt(0, entry.length - ENTRY_PREFIX);
+		prefix.putInt(4, crc(entry));
+		return entry;
+	}
+
+	private static List<InstanceRecord> decode(final byte[] entry) {
+		final ByteBuffer in = ByteBuffer.wrap(entry, ENTRY_PREFIX,
+				entry.length - ENTRY_PREFIX);
+		in.get();
+		readString(in);
+		final int count = in.getInt();
+		final List<InstanceRecord> records = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			final String ip = readString(in);
+			final int port = in.getInt();
+			final double weight = in.getDouble();
+			final int flags = in.get();
+			final int size = in.getInt();
+			final Map<String, String> metadata = new HashMap<>(Math.max(4, size * 2));
+			for (int j = 0; j < size; j++) {
+				metadata.put(readString(in), readString(in));
+			}
+			records.add(InstanceRecord.builder().ip(ip).port(port).weight(weight)
+					.healthy((flags & FLAG_HEALTHY) != 0)
+					.enabled((flags & FLAG_ENABLED) != 0).metadata(metadata).build());
+		}
+		return records;
+	}
+
+	/**
+	 * crc32 of the entry after its length and crc.
+	 */
+	private static int crc(final byte[] entry) {
+		final CRC32 crc = new CRC32();
+		crc.update(entry, ENTRY_PREFIX, entry.length - ENTRY_PREFIX);
+		return (int) crc.getValue();
+	}
+
+	private static void writeString(final DataOutputStream out, final String value)
+			throws IOException {
+		final byte[] bytes = Objects.isNull(value) ? new byte[0]
+				: value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(final ByteBuffer in) {
+		final byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Release the mapping now rather than when the buffer is collected, it must not be
+	 * used afterwards. A failure leaves it to the collector.
+	 */
+	private static void unmap(final MappedByteBuffer mapped) {
+		try {
+			if (Objects.nonNull(INVOKE_CLEANER)) {
+				INVOKE_CLEANER.invoke(UNSAFE, mapped);
+				return;
+			}
+			final Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			final Object cleaner = cleanerMethod.invoke(mapped);
+			if (Objects.nonNull(cleaner)) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		}
+		catch (Throwable ex) {
+			LOGGER.debug("snapshot mapping can not be released : {}", ex.toString());
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (!channel.isOpen()) {
+			return;
+		}
+		disabled = true;
+		try {
+			buffer.force();
+			unmap(buffer);
+			channel.close();
+		}
+		catch (IOException ex) {
+			LOGGER.error("snapshot {} can not be closed : {}", path,
+					ExceptionUtil.getStackTrace(ex));
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.transport;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import com.conf.nacos.dns.codec.MessageReader;
+import com.conf.nacos.dns.codec.MessageWriter;
+
+/**
+ * A received datagram backed by a slice of a {@link PacketPool} slab. The packet is
+ * handed to a worker as-is, so the receive path does not allocate per request; whoever
+ * finishes the request must call {@link #release()}.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class Packet implements Runnable {
+
+	private final PacketPool pool;
+
+	private final ByteBuffer buffer;
+
+	private final MessageReader request = new MessageReader();
+
+	private final MessageWriter response = new MessageWriter();
+
+	private SocketAddress client;
+
+	private Responder responder;
+
+	private RequestHandler handler;
+
+	private long receiveTime;
+
+	Packet(PacketPool pool, ByteBuffer buffer) {
+		this.pool = pool;
+		this.buffer = buffer;
+	}
+
+	void prepare(final SocketAddress client, final Responder responder,
+			final RequestHandler handler) {
+		this.client = client;
+		this.responder = responder;
+		this.handler = handler;
+		this.receiveTime = System.nanoTime();
+		this.request.reset();
+	}
+
+	@Override
+	public void run() {
+		handler.handle(this);
+	}
+
+	/**
+	 * The request data between position and limit, it is reused as soon as the packet is
+	 * released.
+	 *
+	 * @return {@link ByteBuffer}
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * A reader owned by this packet, {@link MessageReader#read(ByteBuffer)} it over
+	 * {@link #getBuffer()} once and share the result between the reactor and the worker.
+	 *
+	 * @return {@link MessageReader}
+	 */
+	public MessageReader getRequest() {
+		return request;
+	}
+
+	/**
+	 * A writer owned by this packet, the response is written over the request.
+	 *
+	 * @return {@link MessageWriter}
+	 */
+	public MessageWriter getResponse() {
+		return response;
+	}
+
+	public SocketAddress getClient() {
+		return client;
+	}
+
+	/**
+	 * When the datagram was read.
+	 *
+	 * @return {@link System#nanoTime()} at receive
+	 */
+	public long getReceiveTime() {
+		return receiveTime;
+	}
+
+	public Responder getResponder() {
+		return responder;
+	}
+
+	public void release() {
+		final Responder current = responder;
+		client = null;
+		responder = null;
+		handler = null;
+		pool.release(this);
+		if (current != null) {
+			current.requestDone();
+		}
+	}
+
+}
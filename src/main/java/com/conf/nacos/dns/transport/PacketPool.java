@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A fixed number of {@link Packet}s carved out of one direct slab. Acquiring and
+ * releasing a packet does not allocate.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class PacketPool {
+
+	private final ArrayBlockingQueue<Packet> free;
+
+	private final int capacity;
+
+	private final int bufferSize;
+
+	public PacketPool(int capacity, int bufferSize) {
+		this.capacity = capacity;
+		this.bufferSize = bufferSize;
+		this.free = new ArrayBlockingQueue<>(capacity);
+		final ByteBuffer slab = ByteBuffer
+				.allocateDirect(Math.multiplyExact(capacity, bufferSize));
+		for (int i = 0; i < capacity; i++) {
+			slab.limit((i + 1) * bufferSize);
+			slab.position(i * bufferSize);
+			free.offer(new Packet(this, slab.slice()));
+		}
+	}
+
+	/**
+	 * Take a cleared packet.
+	 *
+	 * @return {@link Packet}, or {@code null} if every packet is in use
+	 */
+	public Packet acquire() {
+		final Packet packet = free.poll();
+		if (packet != null) {
+			packet.getBuffer().clear();
+		}
+		return packet;
+	}
+
+	void release(final Packet packet) {
+		free.offer(packet);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int available() {
+		return free.size();
+	}
+
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.alibaba.nacos.common.utils.ExceptionUtil;
+import com.conf.nacos.dns.ListenConfig;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import com.conf.nacos.dns.utils.SocketUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DNS over TCP (RFC 7766). Every message is prefixed with its two byte length, one
+ * connection may carry many queries whose responses are written in whatever order the
+ * workers finish them. Connections are capped, idle ones are closed, and a connection
+ * with too many queries in flight stops being read until some of them are answered.
+ *
+ * <p>
+ * Queries go through the same {@link InlineHandler} and {@link WorkerPool} as UDP, each
+ * {@link Connection} is the {@link Responder} of the packets read from it.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class TcpReactor implements Runnable {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TcpReactor.class);
+
+	private static final int LENGTH_PREFIX = 2;
+
+	/**
+	 * Queries are small, the packets are sized for the responses, up to 64 KiB.
+	 */
+	private static final int MAX_QUERY_LENGTH = 4096;
+
+	private static final int MAX_MESSAGE_LENGTH = 0xffff;
+
+	private static final long MIN_SWEEP_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private final PacketPool pool;
+
+	private final InlineHandler inline;
+
+	private final WorkerPool workers;
+
+	private final int maxConnections;
+
+	private final int maxPipelined;
+
+	private final int maxQueryLength;
+
+	private final long idleTimeoutNanos;
+
+	private final int sendBufferSize;
+
+	private final Selector selector;
+
+	private final ServerSocketChannel server;
+
+	/**
+	 * Only touched by the reactor thread.
+	 */
+	private final Set<Connection> connections = new HashSet<>();
+
+	/**
+	 * Connections whose interest set must be recomputed on the reactor thread.
+	 */
+	private final Queue<Connection> updates = new ConcurrentLinkedQueue<>();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder shed = new LongAdder();
+
+	private long lastSweep = System.nanoTime();
+
+	private volatile boolean shutdown = false;
+
+	public TcpReactor(ListenConfig listen, int maxConnections, long idleTimeoutMillis,
+			int maxPipelined, PacketPool pool, InlineHandler inline, WorkerPool workers)
+			throws IOException {
+		this.pool = pool;
+		this.inline = inline;
+		this.workers = workers;
+		this.maxConnections = maxConnections;
+		this.maxPipelined = Math.max(1, maxPipelined);
+		this.maxQueryLength = Math.min(MAX_QUERY_LENGTH, pool.getBufferSize());
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+		this.sendBufferSize = listen.getSendBufferSize();
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		try {
+			server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			if (listen.isReusePort() && !SocketUtils.enableReusePort(server)) {
+				LOGGER.warn("tcp reactor can not set SO_REUSEPORT on this platform");
+			}
+			// accepted connections inherit the receive buffer of the listening socket
+			SocketUtils.setBufferSizes(server, listen.getReceiveBufferSize(), 0);
+			server.bind(listen.toSocketAddress());
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		catch (IOException | RuntimeException ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public void run() {
+		final long sweepInterval = Math.max(MIN_SWEEP_INTERVAL, idleTimeoutNanos / 4);
+		while (!shutdown) {
+			try {
+				selector.select(TimeUnit.NANOSECONDS.toMillis(sweepInterval));
+				Connection connection;
+				while ((connection = updates.poll()) != null) {
+					connection.updateInterest();
+				}
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (key.isValid() && key.isAcceptable()) {
+						accept();
+					}
+					else if (key.attachment() instanceof Connection) {
+						((Connection) key.attachment()).handle(key);
+					}
+				}
+				final long now = System.nanoTime();
+				if (now - lastSweep >= sweepInterval) {
+					lastSweep = now;
+					closeIdle(now);
+				}
+			}
+			catch (ClosedSelectorException ex) {
+				break;
+			}
+			catch (Throwable ex) {
+				if (!shutdown) {
+					LOGGER.error("tcp reactor handler client request has error : {}",
+							ExceptionUtil.getStackTrace(ex));
+				}
+			}
+		}
+		close();
+	}
+
+	private void accept() throws IOException {
+		final SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		if (connections.size() >= maxConnections) {
+			rejected.increment();
+			LOGGER.debug("too many tcp connections, {} is rejected",
+					channel.getRemoteAddress());
+			channel.close();
+			return;
+		}
+		try {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			SocketUtils.setBufferSizes(channel, 0, sendBufferSize);
+			connections.add(new Connection(channel));
+		}
+		catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	private void closeIdle(final long now) {
+		for (Connection connection : new ArrayList<>(connections)) {
+			if (connection.isIdle(now)) {
+				LOGGER.debug("idle tcp connection {} is closed", connection.remote);
+				connection.close();
+			}
+		}
+	}
+
+	public SocketAddress getLocalAddress() throws IOException {
+		return server.getLocalAddress();
+	}
+
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return queries answered SERVFAIL because the packet pool was exhausted
+	 */
+	public long getShedCount() {
+		return shed.sum();
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		selector.wakeup();
+	}
+
+	private void close() {
+		for (Connection connection : new ArrayList<>(connections)) {
+			connection.close();
+		}
+		try {
+			selector.close();
+		}
+		catch (IOException ignore) {
+		}
+		try {
+			server.close();
+		}
+		catch (IOException ignore) {
+		}
+	}
+
+	private final class Connection implements Responder {
+
+		private final SocketChannel channel;
+
+		private final SelectionKey key;
+
+		private final SocketAddress remote;
+
+		/**
+		 * Holds at most one length prefix and one full query, in write mode between
+		 * reads.
+		 */
+		private final ByteBuffer input = ByteBuffer
+				.allocate(LENGTH_PREFIX + maxQueryLength);
+
+		/**
+		 * Framed responses not yet written, guarded by this.
+		 */
+		private final Queue<ByteBuffer> output = new ArrayDeque<>();
+
+		private final AtomicInteger inflight = new AtomicInteger();
+
+		private volatile boolean paused = false;
+
+		private volatile boolean eof = false;
+
+		private volatile boolean closed = false;
+
+		private long lastActive = System.nanoTime();
+
+		Connection(SocketChannel channel) throws IOException {
+			this.channel = channel;
+			this.remote = channel.getRemoteAddress();
+			this.key = channel.register(selector, SelectionKey.OP_READ, this);
+		}
+
+		void handle(final SelectionKey key) {
+			try {
+				if (key.isValid() && key.isReadable()) {
+					read();
+				}
+				if (key.isValid() && key.isWritable()) {
+					flush();
+					updateInterest();
+				}
+			}
+			catch (IOException ex) {
+				LOGGER.debug("tcp connection {} is broken : {}", remote, ex.getMessage());
+				close();
+			}
+		}
+
+		private void read() throws IOException {
+			final int read = channel.read(input);
+			if (read < 0) {
+				// the client is done sending, answer what is in flight then close
+				eof = true;
+				updateInterest();
+				return;
+			}
+			lastActive = System.nanoTime();
+			process();
+		}
+
+		/**
+		 * Hand every complete query in the input buffer to the pipeline.
+		 */
+		private void process() {
+			input.flip();
+			try {
+				while (input.remaining() >= LENGTH_PREFIX) {
+					final int position = input.position();
+					final int length = DnsWireUtils.readUnsignedShort(input, position);
+					if (length < DnsWireUtils.HEADER_LENGTH
+							|| length > maxQueryLength) {
+						LOGGER.debug("tcp connection {} sent a {} bytes message", remote,
+								length);
+						close();
+						return;
+					}
+					if (input.remaining() < LENGTH_PREFIX + length) {
+						break;
+					}
+					if (inflight.get() >= maxPipelined) {
+						paused = true;
+						break;
+					}
+					submit(position + LENGTH_PREFIX, length);
+					input.position(position + LENGTH_PREFIX + length);
+				}
+			}
+			finally {
+				input.compact();
+			}
+			updateInterest();
+		}
+
+		private void submit(final int offset, final int length) {
+			final Packet packet = pool.acquire();
+			if (packet == null) {
+				shedQuery(offset, length);
+				return;
+			}
+			packet.getBuffer().put(input.array(), input.arrayOffset() + offset, length);
+			packet.getBuffer().flip();
+			inflight.incrementAndGet();
+			packet.prepare(remote, this, workers);
+			boolean answered = false;
+			try {
+				answered = inline.tryHandle(packet);
+			}
+			catch (Throwable ex) {
+				LOGGER.error("tcp inline handler has error : {}",
+						ExceptionUtil.getStackTrace(ex));
+			}
+			if (!answered) {
+				workers.dispatch(packet);
+			}
+		}
+
+		private void shedQuery(final int offset, final int length) {
+			shed.increment();
+			final ByteBuffer error = ByteBuffer.allocate(length);
+			error.put(input.array(), input.arrayOffset() + offset, length);
+			error.flip();
+			if (DnsWireUtils.toErrorResponse(error, DnsWireUtils.RCODE_SERVFAIL)) {
+				try {
+					send(error, remote);
+				}
+				catch (IOException ex) {
+					close();
+				}
+			}
+		}
+
+		@Override
+		public void send(final ByteBuffer response, final SocketAddress client)
+				throws IOException {
+			if (closed) {
+				return;
+			}
+			final int length = response.remaining();
+			if (length > MAX_MESSAGE_LENGTH) {
+				throw new IOException("response of " + length + " bytes is too large");
+			}
+			final ByteBuffer frame = ByteBuffer.allocate(LENGTH_PREFIX + length);
+			frame.putShort((short) length);
+			frame.put(response);
+			frame.flip();
+			synchronized (this) {
+				if (output.isEmpty()) {
+					channel.write(frame);
+					if (!frame.hasRemaining()) {
+						return;
+					}
+				}
+				output.add(frame);
+			}
+			requestUpdate();
+		}
+
+		@Override
+		public boolean isStream() {
+			return true;
+		}
+
+		@Override
+		public void requestDone() {
+			inflight.decrementAndGet();
+			if (paused || eof) {
+				requestUpdate();
+			}
+		}
+
+		private void requestUpdate() {
+			updates.offer(this);
+			selector.wakeup();
+		}
+
+		private synchronized void flush() throws IOException {
+			while (!output.isEmpty()) {
+				final ByteBuffer frame = output.peek();
+				channel.write(frame);
+				if (frame.hasRemaining()) {
+					return;
+				}
+				output.poll();
+			}
+			lastActive = System.nanoTime();
+		}
+
+		private synchronized boolean hasOutput() {
+			return !output.isEmpty();
+		}
+
+		/**
+		 * Recompute the interest set, only on the reactor thread.
+		 */
+		void updateInterest() {
+			if (closed) {
+				return;
+			}
+			if (paused && inflight.get() < maxPipelined) {
+				paused = false;
+				// queries may be waiting in the input buffer with nothing more to read
+				process();
+				return;
+			}
+			final boolean hasOutput = hasOutput();
+			if (eof && inflight.get() == 0 && !hasOutput) {
+				close();
+				return;
+			}
+			key.interestOps((paused || eof ? 0 : SelectionKey.OP_READ)
+					| (hasOutput ? SelectionKey.OP_WRITE : 0));
+		}
+
+		boolean isIdle(final long now) {
+			return inflight.get() == 0 && !hasOutput()
+					&& now - lastActive > idleTimeoutNanos;
+		}
+
+		void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			connections.remove(this);
+			key.cancel();
+			try {
+				channel.close();
+			}
+			catch (IOException ignore) {
+			}
+		}
+
+	}
+
+}
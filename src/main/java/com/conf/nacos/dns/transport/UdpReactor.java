@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.transport;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.alibaba.nacos.common.utils.ExceptionUtil;
+import com.conf.nacos.dns.ListenConfig;
+import com.conf.nacos.dns.utils.SocketUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A receive loop over its own {@link DatagramChannel}. When several reactors are bound
+ * to the same address with SO_REUSEPORT, the kernel spreads the datagrams across them.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class UdpReactor implements Runnable, Responder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(UdpReactor.class);
+
+	private final int index;
+
+	private final PacketPool pool;
+
+	/**
+	 * Datagrams are read here and shed when the pool is exhausted.
+	 */
+	private final ByteBuffer overflow;
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final InlineHandler inline;
+
+	private final WorkerPool workers;
+
+	private final Selector selector;
+
+	private final DatagramChannel channel;
+
+	private volatile boolean shutdown = false;
+
+	public UdpReactor(int index, ListenConfig listen, boolean reusePort,
+			PacketPool pool, InlineHandler inline, WorkerPool workers) throws IOException {
+		this.index = index;
+		this.pool = pool;
+		this.overflow = ByteBuffer.allocateDirect(pool.getBufferSize());
+		this.inline = inline;
+		this.workers = workers;
+		this.selector = Selector.open();
+		this.channel = DatagramChannel.open();
+		try {
+			if (reusePort && !SocketUtils.enableReusePort(channel)) {
+				LOGGER.warn("reactor-{} can not set SO_REUSEPORT on this platform", index);
+			}
+			final int receiveBufferSize = SocketUtils.setBufferSizes(channel,
+					listen.getReceiveBufferSize(), listen.getSendBufferSize());
+			if (receiveBufferSize < listen.getReceiveBufferSize()) {
+				LOGGER.warn("reactor-{} asked for a {} bytes receive buffer, got {}", index,
+						listen.getReceiveBufferSize(), receiveBufferSize);
+			}
+			channel.bind(listen.toSocketAddress());
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ);
+		}
+		catch (IOException | RuntimeException ex) {
+			close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public void run() {
+		while (!shutdown) {
+			try {
+				selector.select();
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (key.isValid() && key.isReadable()) {
+						read();
+					}
+				}
+			}
+			catch (ClosedSelectorException ex) {
+				break;
+			}
+			catch (Throwable ex) {
+				if (!shutdown) {
+					LOGGER.error("reactor-{} handler client request has error : {}",
+							index, ExceptionUtil.getStackTrace(ex));
+				}
+			}
+		}
+		close();
+	}
+
+	private void read() throws IOException {
+		// drain the socket, one readiness event may cover many datagrams
+		for (;;) {
+			final Packet packet = pool.acquire();
+			if (packet == null) {
+				if (!discard()) {
+					return;
+				}
+				continue;
+			}
+			final SocketAddress client = channel.receive(packet.getBuffer());
+			if (client == null) {
+				packet.release();
+				return;
+			}
+			packet.getBuffer().flip();
+			packet.prepare(client, this, workers);
+			if (!tryInline(packet)) {
+				workers.dispatch(packet);
+			}
+		}
+	}
+
+	private boolean tryInline(final Packet packet) {
+		try {
+			return inline.tryHandle(packet);
+		}
+		catch (Throwable ex) {
+			LOGGER.error("reactor-{} inline handler has error : {}", index,
+					ExceptionUtil.getStackTrace(ex));
+			return false;
+		}
+	}
+
+	private boolean discard() throws IOException {
+		overflow.clear();
+		final SocketAddress client = channel.receive(overflow);
+		if (client == null) {
+			return false;
+		}
+		overflow.flip();
+		dropped.increment();
+		LOGGER.debug("reactor-{} packet pool exhausted, datagram shed", index);
+		workers.shed(overflow, client, this);
+		return true;
+	}
+
+	@Override
+	public void send(final ByteBuffer buffer, final SocketAddress client)
+			throws IOException {
+		channel.send(buffer, client);
+	}
+
+	@Override
+	public boolean isStream() {
+		return false;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public SocketAddress getLocalAddress() throws IOException {
+		return channel.getLocalAddress();
+	}
+
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		selector.wakeup();
+	}
+
+	private void close() {
+		try {
+			selector.close();
+		}
+		catch (IOException ignore) {
+		}
+		try {
+			channel.close();
+		}
+		catch (IOException ignore) {
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.transport;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.alibaba.nacos.common.executor.NameThreadFactory;
+import com.alibaba.nacos.common.utils.ThreadUtils;
+import com.conf.nacos.dns.WorkerConfig;
+import com.conf.nacos.dns.constants.ExecutionMode;
+import com.conf.nacos.dns.constants.ShedPolicy;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission stage between the reactors and the request handler.
+ *
+ * <p>
+ * Packets wait in a bounded queue of a platform thread pool, or in
+ * {@link ExecutionMode#VIRTUAL} mode each one runs on its own virtual thread with the
+ * number of packets in flight bounded instead. Beyond the bound the packet is shed on
+ * the reactor thread according to the {@link ShedPolicy}, and a packet that waited past
+ * the deadline is dropped by the worker without being processed, so an overloaded server
+ * keeps working on fresh traffic.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class WorkerPool implements RequestHandler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(WorkerPool.class);
+
+	private final RequestHandler delegate;
+
+	private final ExecutorService executor;
+
+	/**
+	 * Bounds the packets in flight in virtual mode, {@code null} for the thread pool.
+	 */
+	private final Semaphore permits;
+
+	private final ShedPolicy shedPolicy;
+
+	private final long deadlineNanos;
+
+	private final LongAdder shed = new LongAdder();
+
+	private final LongAdder expired = new LongAdder();
+
+	public WorkerPool(WorkerConfig config, RequestHandler delegate) {
+		this.delegate = delegate;
+		this.shedPolicy = config.getShedPolicy();
+		this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(config.getDeadline());
+		final int capacity = Math.max(1, config.getQueueCapacity());
+		final ExecutorService virtual = config.getMode() == ExecutionMode.VIRTUAL
+				? newVirtualThreadExecutor()
+				: null;
+		if (Objects.nonNull(virtual)) {
+			this.executor = virtual;
+			this.permits = new Semaphore(capacity);
+			LOGGER.info("dns-server handles queries on virtual threads");
+			return;
+		}
+		if (config.getMode() == ExecutionMode.VIRTUAL) {
+			LOGGER.warn("virtual threads are not available on this JDK, "
+					+ "fall back to the thread pool");
+		}
+		final int threads = Math.max(1, config.getThreads());
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity),
+				new NameThreadFactory("com.conf.nacos.dns.worker"),
+				(runnable, pool) -> shed((Packet) runnable));
+		this.permits = null;
+	}
+
+	/**
+	 * {@code Executors.newVirtualThreadPerTaskExecutor()} is looked up reflectively so
+	 * that the server still runs on JDK 8.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (Throwable ignore) {
+			return null;
+		}
+	}
+
+	/**
+	 * Queue a packet, called on the reactor thread.
+	 *
+	 * @param packet {@link Packet} prepared with this pool as its handler
+	 */
+	public void dispatch(final Packet packet) {
+		if (Objects.isNull(permits)) {
+			executor.execute(packet);
+			return;
+		}
+		if (!permits.tryAcquire()) {
+			shed(packet);
+			return;
+		}
+		try {
+			executor.execute(packet);
+		}
+		catch (RejectedExecutionException ex) {
+			permits.release();
+			shed(packet);
+		}
+	}
+
+	@Override
+	public void handle(final Packet packet) {
+		try {
+			if (deadlineNanos > 0
+					&& System.nanoTime() - packet.getReceiveTime() > deadlineNanos) {
+				expired.increment();
+				packet.release();
+				return;
+			}
+			delegate.handle(packet);
+		}
+		finally {
+			if (Objects.nonNull(permits)) {
+				permits.release();
+			}
+		}
+	}
+
+	private void shed(final Packet packet) {
+		try {
+			shed(packet.getBuffer(), packet.getClient(), packet.getResponder());
+		}
+		finally {
+			packet.release();
+		}
+	}
+
+	/**
+	 * Shed a query that never got a {@link Packet}, called on the reactor thread when its
+	 * packet pool is exhausted. The pool runs out before a large queue fills up, the
+	 * client is answered by the same policy either way.
+	 *
+	 * @param buffer the query between position and limit, the reply is written over it
+	 * @param client where the query came from
+	 * @param responder the transport it came in on
+	 */
+	public void shed(final ByteBuffer buffer, final SocketAddress client,
+			final Responder responder) {
+		shed.increment();
+		if (shedPolicy == ShedPolicy.DROP) {
+			return;
+		}
+		final int rCode = shedPolicy == ShedPolicy.SERVFAIL
+				? DnsWireUtils.RCODE_SERVFAIL
+				: DnsWireUtils.RCODE_REFUSED;
+		try {
+			if (DnsWireUtils.toErrorResponse(buffer, rCode)) {
+				responder.send(buffer, client);
+			}
+		}
+		catch (IOException ex) {
+			LOGGER.debug("reply shed query failed : {}", ex.getMessage());
+		}
+	}
+
+	public long getShedCount() {
+		return shed.sum();
+	}
+
+	public long getExpiredCount() {
+		return expired.sum();
+	}
+
+	public int getQueueSize() {
+		if (executor instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) executor).getQueue().size();
+		}
+		return 0;
+	}
+
+	public void shutdown() {
+		ThreadUtils.shutdownThreadPool(executor, LOGGER);
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.conf.nacos.dns.codec.MessageReader;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+
+/**
+ * (qname, qtype, qclass, edns) of a single question message, the name is kept in
+ * lower-cased wire format so no string is decoded. Whether the query carries OPT and the
+ * DO bit are part of the key, a response sized or signed for an EDNS client is never
+ * served to a plain one.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class QuestionKey {
+
+	private static final int EDNS_NONE = 0;
+
+	private static final int EDNS_PLAIN = 1;
+
+	private static final int EDNS_DO = 2;
+
+	private final byte[] name;
+
+	private final int type;
+
+	private final int dClass;
+
+	private final int edns;
+
+	private final int hash;
+
+	private QuestionKey(byte[] name, int type, int dClass, int edns) {
+		this.name = name;
+		this.type = type;
+		this.dClass = dClass;
+		this.edns = edns;
+		this.hash = ((Arrays.hashCode(name) * 31 + type) * 31 + dClass) * 31 + edns;
+	}
+
+	/**
+	 * Read the key of a message whose header starts at index 0.
+	 *
+	 * @param message dns message
+	 * @return {@link QuestionKey}, or {@code null} if the message has no single valid
+	 *     question
+	 */
+	public static QuestionKey of(final ByteBuffer message) {
+		final MessageReader reader = new MessageReader();
+		if (!reader.read(message)) {
+			return null;
+		}
+		final int nameEnd = reader.getNameEnd();
+		final byte[] name = new byte[nameEnd - DnsWireUtils.HEADER_LENGTH];
+		for (int i = 0; i < name.length; i++) {
+			name[i] = DnsWireUtils.toLowerCase(message.get(DnsWireUtils.HEADER_LENGTH + i));
+		}
+		// the question name is never compressed, a pointer here is malformed
+		for (int i = 0; i < name.length; i += (name[i] & 0xff) + 1) {
+			if ((name[i] & 0xC0) != 0) {
+				return null;
+			}
+		}
+		final int edns = !reader.hasOpt() ? EDNS_NONE
+				: reader.isDnssecOk() ? EDNS_DO : EDNS_PLAIN;
+		return new QuestionKey(name, reader.getQType(), reader.getQClass(), edns);
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getDClass() {
+		return dClass;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof QuestionKey)) {
+			return false;
+		}
+		QuestionKey that = (QuestionKey) o;
+		return hash == that.hash && type == that.type && dClass == that.dClass
+				&& edns == that.edns && Arrays.equals(name, that.name);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < name.length && name[i] != 0; i += (name[i] & 0xff) + 1) {
+			builder.append(new String(name, i + 1, name[i] & 0xff)).append('.');
+		}
+		return "QuestionKey{" + "name='" + builder + '\'' + ", type=" + type
+				+ ", dClass=" + dClass + ", edns=" + edns + '}';
+	}
+
+}
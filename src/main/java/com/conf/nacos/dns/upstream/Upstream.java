@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live latency and error score of one backend dns.
+ *
+ * <p>
+ * The score is the EWMA of the round-trip time plus the EWMA error rate multiplied by
+ * the query timeout, i.e. roughly the latency a query should expect from this backend.
+ * The last {@link #SAMPLE_SIZE} round-trip times are kept to derive the hedging delay,
+ * which is recomputed every {@link #RECOMPUTE_SAMPLES} samples rather than on every send.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+final class Upstream {
+
+	private static final double ALPHA = 0.3D;
+
+	private static final int SAMPLE_SIZE = 64;
+
+	private static final int MIN_SAMPLES = 8;
+
+	private static final int RECOMPUTE_SAMPLES = 8;
+
+	private final InetSocketAddress address;
+
+	private final long timeoutNanos;
+
+	private final long[] samples = new long[SAMPLE_SIZE];
+
+	private long sampleCount = 0L;
+
+	/**
+	 * sampleCount when the percentile was last computed.
+	 */
+	private long computedAt = -RECOMPUTE_SAMPLES;
+
+	private long percentileRtt = 0L;
+
+	private double ewmaRtt = 0D;
+
+	private double errorRate = 0D;
+
+	private volatile double score = 0D;
+
+	Upstream(InetSocketAddress address, long timeoutMillis) {
+		this.address = address;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	synchronized void recordSuccess(final long rttNanos) {
+		addSample(rttNanos);
+		errorRate = errorRate * (1 - ALPHA);
+		updateScore();
+	}
+
+	/**
+	 * Another backend answered first, the round trip of this one took at least the time
+	 * elapsed so far. Without it a primary that became slow would keep its old latency and
+	 * every query would wait for the hedge.
+	 */
+	synchronized void recordOvertaken(final long elapsedNanos) {
+		addSample(elapsedNanos);
+		updateScore();
+	}
+
+	private void addSample(final long rttNanos) {
+		ewmaRtt = sampleCount == 0 ? rttNanos : ewmaRtt + ALPHA * (rttNanos - ewmaRtt);
+		samples[(int) (sampleCount++ % SAMPLE_SIZE)] = rttNanos;
+	}
+
+	synchronized void recordFailure() {
+		errorRate = errorRate * (1 - ALPHA) + ALPHA;
+		updateScore();
+	}
+
+	private void updateScore() {
+		score = ewmaRtt + errorRate * timeoutNanos;
+	}
+
+	/**
+	 * How long to wait for this backend before the query is also sent to the next one.
+	 *
+	 * @param percentile e.g. 0.95
+	 * @param minNanos lower bound
+	 * @return delay in nanoseconds, at most the query timeout
+	 */
+	synchronized long hedgeDelayNanos(final double percentile, final long minNanos) {
+		if (sampleCount < MIN_SAMPLES) {
+			return Math.max(minNanos, timeoutNanos / 4);
+		}
+		if (sampleCount - computedAt >= RECOMPUTE_SAMPLES) {
+			final int size = (int) Math.min(sampleCount, SAMPLE_SIZE);
+			final long[] sorted = Arrays.copyOf(samples, size);
+			Arrays.sort(sorted);
+			final int index = Math.min(size - 1, (int) Math.ceil(percentile * size) - 1);
+			percentileRtt = sorted[Math.max(0, index)];
+			computedAt = sampleCount;
+		}
+		return Math.min(timeoutNanos, Math.max(minNanos, percentileRtt));
+	}
+
+	double getScore() {
+		return score;
+	}
+
+	InetSocketAddress getAddress() {
+		return address;
+	}
+
+	@Override
+	public String toString() {
+		return "Upstream{" + "address=" + address + ", score="
+				+ TimeUnit.NANOSECONDS.toMillis((long) score) + "ms}";
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.conf.nacos.dns.utils.DnsWireUtils;
+
+/**
+ * Caches backend responses in wire format by (qname, qtype, qclass).
+ *
+ * <p>
+ * Positive answers live for the smallest record TTL. NXDOMAIN and NODATA answers live for
+ * min(SOA TTL, SOA MINIMUM) as RFC 2308 describes, and are not cached without a SOA.
+ * Every hit is a copy with the client's transaction id and question name, case included,
+ * and the record TTLs decremented by the time spent in the cache. The size is bounded by LRU segments.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class UpstreamCache {
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+	private final long maxTtl;
+
+	private final long negativeMaxTtl;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	public UpstreamCache(int maxSize, long maxTtl, long negativeMaxTtl) {
+		this.maxTtl = maxTtl;
+		this.negativeMaxTtl = negativeMaxTtl;
+		final int segmentCapacity = Math.max(1, maxSize / SEGMENT_COUNT);
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * Look up a cached response.
+	 *
+	 * @param key {@link QuestionKey}
+	 * @param query the client query, header at index 0
+	 * @return a private copy of the response, or {@code null} on a miss
+	 */
+	public byte[] get(final QuestionKey key, final ByteBuffer query) {
+		final Segment segment = segmentFor(key);
+		final CachedResponse entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+		}
+		if (entry == null) {
+			misses.increment();
+			return null;
+		}
+		final long elapsed = TimeUnit.NANOSECONDS
+				.toSeconds(System.nanoTime() - entry.createTime);
+		if (elapsed >= entry.ttl) {
+			synchronized (segment) {
+				segment.remove(key, entry);
+			}
+			misses.increment();
+			return null;
+		}
+		final byte[] response = entry.response.clone();
+		final ByteBuffer buffer = ByteBuffer.wrap(response);
+		DnsWireUtils.setId(buffer, DnsWireUtils.getId(query));
+		DnsWireUtils.copyQuestionName(response, query);
+		for (int offset : entry.ttlOffsets) {
+			final long ttl = DnsWireUtils.readUnsignedInt(buffer, offset);
+			buffer.putInt(offset, (int) Math.max(0L, ttl - elapsed));
+		}
+		hits.increment();
+		return response;
+	}
+
+	/**
+	 * Cache a backend response if it is cacheable.
+	 *
+	 * @param key {@link QuestionKey}
+	 * @param response response in wire format, it must not be modified afterwards
+	 */
+	public void put(final QuestionKey key, final byte[] response) {
+		final CachedResponse entry = inspect(response);
+		if (entry == null) {
+			return;
+		}
+		final Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.put(key, entry);
+		}
+	}
+
+	private CachedResponse inspect(final byte[] response) {
+		final ByteBuffer buffer = ByteBuffer.wrap(response);
+		if (response.length < DnsWireUtils.HEADER_LENGTH
+				|| DnsWireUtils.isTruncated(buffer)) {
+			return null;
+		}
+		final int rCode = DnsWireUtils.getRCode(buffer);
+		if (rCode != DnsWireUtils.RCODE_NOERROR && rCode != DnsWireUtils.RCODE_NXDOMAIN) {
+			return null;
+		}
+		int offset = DnsWireUtils.questionEnd(buffer);
+		if (offset < 0) {
+			return null;
+		}
+		final int anCount = DnsWireUtils.readUnsignedShort(buffer,
+				DnsWireUtils.ANCOUNT_OFFSET);
+		final int nsCount = DnsWireUtils.readUnsignedShort(buffer,
+				DnsWireUtils.NSCOUNT_OFFSET);
+		final int total = anCount + nsCount + DnsWireUtils
+				.readUnsignedShort(buffer, DnsWireUtils.ARCOUNT_OFFSET);
+
+		final int[] ttlOffsets = new int[total];
+		int ttlCount = 0;
+		long minTtl = Long.MAX_VALUE;
+		long negativeTtl = -1L;
+		for (int i = 0; i < total; i++) {
+			offset = DnsWireUtils.skipName(buffer, offset);
+			if (offset < 0 || offset + 10 > response.length) {
+				return null;
+			}
+			final int type = DnsWireUtils.readUnsignedShort(buffer, offset);
+			final long ttl = DnsWireUtils.readUnsignedInt(buffer, offset + 4);
+			final int rdataEnd = offset + 10
+					+ DnsWireUtils.readUnsignedShort(buffer, offset + 8);
+			if (rdataEnd > response.length) {
+				return null;
+			}
+			// the ttl field of OPT carries flags, not a ttl
+			if (type != DnsWireUtils.TYPE_OPT) {
+				ttlOffsets[ttlCount++] = offset + 4;
+				minTtl = Math.min(minTtl, ttl);
+				final boolean authority = i >= anCount && i < anCount + nsCount;
+				if (authority && type == DnsWireUtils.TYPE_SOA
+						&& rdataEnd - offset >= 30) {
+					negativeTtl = Math.min(ttl,
+							DnsWireUtils.readUnsignedInt(buffer, rdataEnd - 4));
+				}
+			}
+			offset = rdataEnd;
+		}
+
+		final long ttl;
+		if (rCode == DnsWireUtils.RCODE_NXDOMAIN || anCount == 0) {
+			ttl = Math.min(negativeTtl, negativeMaxTtl);
+		}
+		else {
+			ttl = Math.min(minTtl, maxTtl);
+		}
+		if (ttl <= 0) {
+			return null;
+		}
+		return new CachedResponse(response, Arrays.copyOf(ttlOffsets, ttlCount), ttl,
+				System.nanoTime());
+	}
+
+	private Segment segmentFor(final QuestionKey key) {
+		final int h = key.hashCode();
+		return segments[(h ^ (h >>> 16)) & (SEGMENT_COUNT - 1)];
+	}
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public String toString() {
+		return "UpstreamCache{" + "size=" + size() + ", hits=" + getHitCount()
+				+ ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+				+ '}';
+	}
+
+	private static final class CachedResponse {
+
+		private final byte[] response;
+
+		private final int[] ttlOffsets;
+
+		private final long ttl;
+
+		private final long createTime;
+
+		CachedResponse(byte[] response, int[] ttlOffsets, long ttl, long createTime) {
+			this.response = response;
+			this.ttlOffsets = ttlOffsets;
+			this.ttl = ttl;
+			this.createTime = createTime;
+		}
+
+	}
+
+	private final class Segment extends LinkedHashMap<QuestionKey, CachedResponse> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<QuestionKey, CachedResponse> eldest) {
+			if (size() > capacity) {
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
@@ -0,0 +1,681 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.alibaba.nacos.common.executor.ExecutorFactory;
+import com.alibaba.nacos.common.executor.NameThreadFactory;
+import com.alibaba.nacos.common.utils.ExceptionUtil;
+import com.conf.nacos.dns.UpstreamConfig;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Forwards queries to the backend dns servers over a few long-lived non-blocking
+ * sockets per backend.
+ *
+ * <p>
+ * A query goes to the backend with the best {@link Upstream} score first. If it has not
+ * answered within its percentile-based hedging delay, or answered SERVFAIL/REFUSED, the
+ * query is also sent to the next backend, and the first good response wins. Every send
+ * gets a fresh transaction id on its socket, and responses are matched back by that id
+ * and the question before the caller's future is completed on the io thread.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class UpstreamForwarder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamForwarder.class);
+
+	private static final int ID_SPACE = 1 << 16;
+
+	private static final int MAX_ID_ATTEMPTS = 32;
+
+	/**
+	 * One query in this many goes to a random backend first, so that a backend with a
+	 * bad score gets the chance to recover it.
+	 */
+	private static final int PROBE_INTERVAL = 100;
+
+	/**
+	 * Threads retrying truncated responses over TCP, they are rare.
+	 */
+	private static final int STREAM_THREADS = 2;
+
+	private static final int MAX_PENDING_STREAMS = 256;
+
+	private final Backend[] backends;
+
+	private final Selector selector;
+
+	private final ScheduledExecutorService timer;
+
+	private final ThreadPoolExecutor streamExecutor;
+
+	private final long timeoutMillis;
+
+	private final double hedgePercentile;
+
+	private final long hedgeMinDelayNanos;
+
+	private final int bufferSize;
+
+	private final Thread ioThread;
+
+	private volatile boolean shutdown = false;
+
+	public UpstreamForwarder(List<InetSocketAddress> addresses, UpstreamConfig config,
+			int bufferSize) throws IOException {
+		if (addresses.isEmpty()) {
+			throw new IllegalArgumentException("no backend dns server");
+		}
+		this.timeoutMillis = config.getTimeout();
+		this.hedgePercentile = config.getHedgePercentile();
+		this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS
+				.toNanos(config.getHedgeMinDelay());
+		this.bufferSize = bufferSize;
+		this.selector = Selector.open();
+		this.backends = new Backend[addresses.size()];
+		try {
+			for (int i = 0; i < backends.length; i++) {
+				backends[i] = new Backend(
+						new Upstream(addresses.get(i), config.getTimeout()),
+						Math.max(1, config.getSockets()));
+			}
+		}
+		catch (IOException | RuntimeException ex) {
+			close();
+			throw ex;
+		}
+		this.timer = ExecutorFactory.newSingleScheduledExecutorService(
+				UpstreamForwarder.class.getCanonicalName(),
+				new NameThreadFactory("com.conf.nacos.dns.upstream.timer"));
+		this.streamExecutor = new ThreadPoolExecutor(STREAM_THREADS, STREAM_THREADS, 60L,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<>(MAX_PENDING_STREAMS),
+				new NameThreadFactory("com.conf.nacos.dns.upstream.tcp"));
+		this.streamExecutor.allowCoreThreadTimeOut(true);
+		this.ioThread = new Thread(this::loop, "com.conf.nacos.dns.upstream");
+		this.ioThread.setDaemon(true);
+		this.ioThread.start();
+	}
+
+	/**
+	 * Send a query to the backend dns without blocking.
+	 *
+	 * @param query the query between position and limit, it is copied before returning
+	 * @return the response carrying the query's own transaction id
+	 */
+	public CompletableFuture<byte[]> forward(final ByteBuffer query) {
+		final CompletableFuture<byte[]> future = new CompletableFuture<>();
+		final ByteBuffer message = query.slice();
+		final int questionEnd = DnsWireUtils.questionEnd(message);
+		if (questionEnd < 0) {
+			future.completeExceptionally(
+					new IllegalArgumentException("malformed dns query"));
+			return future;
+		}
+		final byte[] data = new byte[message.remaining()];
+		message.duplicate().get(data);
+		final byte[] question = Arrays.copyOfRange(data, DnsWireUtils.HEADER_LENGTH,
+				questionEnd);
+
+		final Exchange exchange = new Exchange(data, question, rank(), future);
+		exchange.start();
+		return future;
+	}
+
+	/**
+	 * Send a query over TCP, for a client that asked over TCP and got a truncated UDP
+	 * response. The backends are tried in score order, each with a fresh connection and
+	 * the query timeout, on a small pool of their own so the io thread never blocks.
+	 *
+	 * @param query the query between position and limit, it is copied before returning
+	 * @return the response carrying the query's own transaction id
+	 */
+	public CompletableFuture<byte[]> forwardOverTcp(final ByteBuffer query) {
+		final CompletableFuture<byte[]> future = new CompletableFuture<>();
+		final ByteBuffer message = query.slice();
+		final byte[] data = new byte[message.remaining()];
+		message.get(data);
+		try {
+			streamExecutor.execute(() -> {
+				IOException last = null;
+				for (Backend backend : rank()) {
+					try {
+						future.complete(exchangeOverTcp(backend.upstream.getAddress(), data));
+						return;
+					}
+					catch (IOException ex) {
+						last = ex;
+						LOGGER.debug("tcp query to {} failed : {}",
+								backend.upstream.getAddress(), ex.toString());
+					}
+				}
+				future.completeExceptionally(last);
+			});
+		}
+		catch (RejectedExecutionException ex) {
+			future.completeExceptionally(ex);
+		}
+		return future;
+	}
+
+	private byte[] exchangeOverTcp(final InetSocketAddress address, final byte[] query)
+			throws IOException {
+		try (java.net.Socket socket = new java.net.Socket()) {
+			socket.connect(address, (int) timeoutMillis);
+			socket.setSoTimeout((int) timeoutMillis);
+			final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeShort(query.length);
+			out.write(query);
+			out.flush();
+			final DataInputStream in = new DataInputStream(socket.getInputStream());
+			final byte[] response = new byte[in.readUnsignedShort()];
+			in.readFully(response);
+			if (response.length < DnsWireUtils.HEADER_LENGTH || DnsWireUtils
+					.getId(ByteBuffer.wrap(response)) != DnsWireUtils
+							.getId(ByteBuffer.wrap(query))) {
+				throw new IOException("tcp response from " + address + " does not match");
+			}
+			return response;
+		}
+	}
+
+	private Backend[] rank() {
+		final Backend[] order = backends.clone();
+		if (order.length == 1) {
+			return order;
+		}
+		// snapshot the scores, they keep changing while sorting
+		final double[] scores = new double[order.length];
+		for (int i = 0; i < order.length; i++) {
+			scores[i] = order[i].upstream.getScore();
+		}
+		// insertion sort, there are only a handful of backends
+		for (int i = 1; i < order.length; i++) {
+			final Backend backend = order[i];
+			final double score = scores[i];
+			int j = i - 1;
+			while (j >= 0 && scores[j] > score) {
+				order[j + 1] = order[j];
+				scores[j + 1] = scores[j];
+				j--;
+			}
+			order[j + 1] = backend;
+			scores[j + 1] = score;
+		}
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (random.nextInt(PROBE_INTERVAL) == 0) {
+			final int probe = 1 + random.nextInt(order.length - 1);
+			final Backend first = order[0];
+			order[0] = order[probe];
+			order[probe] = first;
+		}
+		return order;
+	}
+
+	private void loop() {
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+		while (!shutdown) {
+			try {
+				selector.select();
+				Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (key.isValid() && key.isReadable()) {
+						((Socket) key.attachment()).drain(buffer);
+					}
+				}
+			}
+			catch (ClosedSelectorException ex) {
+				break;
+			}
+			catch (Throwable ex) {
+				if (!shutdown) {
+					LOGGER.error("read response from backend dns has error : {}",
+							ExceptionUtil.getStackTrace(ex));
+				}
+			}
+		}
+	}
+
+	public List<String> describeUpstreams() {
+		List<String> result = new ArrayList<>(backends.length);
+		for (Backend backend : backends) {
+			result.add(backend.upstream.toString());
+		}
+		return result;
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		selector.wakeup();
+		try {
+			ioThread.join(TimeUnit.SECONDS.toMillis(3));
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		timer.shutdownNow();
+		streamExecutor.shutdownNow();
+		close();
+		final IOException ex = new IOException("upstream forwarder is shutdown");
+		for (Backend backend : backends) {
+			if (backend != null) {
+				backend.failAll(ex);
+			}
+		}
+	}
+
+	private void close() {
+		try {
+			selector.close();
+		}
+		catch (IOException ignore) {
+		}
+		for (Backend backend : backends) {
+			if (backend != null) {
+				backend.close();
+			}
+		}
+	}
+
+	/**
+	 * One client query and the sends made on its behalf, guarded by its own monitor.
+	 */
+	private final class Exchange {
+
+		private final byte[] query;
+
+		private final int originalId;
+
+		private final byte[] question;
+
+		private final Backend[] order;
+
+		private final CompletableFuture<byte[]> future;
+
+		private final List<Attempt> outstanding = new ArrayList<>(2);
+
+		private int next = 0;
+
+		private boolean done = false;
+
+		/**
+		 * The last SERVFAIL/REFUSED answer, returned if no backend does better.
+		 */
+		private byte[] fallback;
+
+		private ScheduledFuture<?> timeout;
+
+		private ScheduledFuture<?> hedge;
+
+		Exchange(byte[] query, byte[] question, Backend[] order,
+				CompletableFuture<byte[]> future) {
+			this.query = query;
+			this.originalId = DnsWireUtils.getId(ByteBuffer.wrap(query));
+			this.question = question;
+			this.order = order;
+			this.future = future;
+		}
+
+		void start() {
+			synchronized (this) {
+				timeout = timer.schedule(this::onTimeout, timeoutMillis,
+						TimeUnit.MILLISECONDS);
+				sendNext();
+			}
+			finishIfExhausted(new IOException("no backend dns accepted the query"));
+		}
+
+		/**
+		 * Send to the next backend in score order, must hold the monitor.
+		 */
+		private boolean sendNext() {
+			while (!done && next < order.length) {
+				final Backend backend = order[next++];
+				final Attempt attempt = new Attempt(this, backend);
+				if (backend.send(attempt)) {
+					outstanding.add(attempt);
+					// a hedge still pending is superseded by the one of this send
+					if (hedge != null) {
+						hedge.cancel(false);
+						hedge = null;
+					}
+					if (next < order.length) {
+						final long delay = backend.upstream
+								.hedgeDelayNanos(hedgePercentile, hedgeMinDelayNanos);
+						hedge = timer.schedule(this::onHedge, delay,
+								TimeUnit.NANOSECONDS);
+					}
+					return true;
+				}
+				backend.upstream.recordFailure();
+			}
+			return false;
+		}
+
+		private void onHedge() {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				LOGGER.debug("hedge query {} to the next backend", originalId);
+				sendNext();
+			}
+			finishIfExhausted(new IOException("no backend dns accepted the query"));
+		}
+
+		void onResponse(final Attempt attempt, final byte[] response) {
+			final int rCode = DnsWireUtils.getRCode(ByteBuffer.wrap(response));
+			final boolean failed = rCode == DnsWireUtils.RCODE_SERVFAIL
+					|| rCode == DnsWireUtils.RCODE_REFUSED;
+			synchronized (this) {
+				outstanding.remove(attempt);
+				if (done) {
+					return;
+				}
+				if (failed) {
+					attempt.backend.upstream.recordFailure();
+					fallback = response;
+					if (sendNext() || !outstanding.isEmpty()) {
+						return;
+					}
+				}
+				else {
+					attempt.backend.upstream
+							.recordSuccess(System.nanoTime() - attempt.sendTime);
+				}
+				finish(failed ? null : attempt);
+			}
+			future.complete(response);
+		}
+
+		private void onTimeout() {
+			synchronized (this) {
+				if (done) {
+					return;
+				}
+				for (Attempt attempt : outstanding) {
+					if (attempt.backend.remove(attempt)) {
+						attempt.backend.upstream.recordFailure();
+					}
+				}
+				outstanding.clear();
+			}
+			finishIfExhausted(new TimeoutException(
+					"no response from backend dns in " + timeoutMillis + " ms"));
+		}
+
+		/**
+		 * Complete the query when nothing is in flight any more, outside the monitor.
+		 */
+		private void finishIfExhausted(final Throwable cause) {
+			final byte[] response;
+			synchronized (this) {
+				if (done || !outstanding.isEmpty()) {
+					return;
+				}
+				finish(null);
+				response = fallback;
+			}
+			if (response != null) {
+				future.complete(response);
+			}
+			else {
+				future.completeExceptionally(cause);
+			}
+		}
+
+		/**
+		 * Mark done and withdraw every other send, must hold the monitor. A send that went
+		 * out before the winner's was slower than it and is charged its elapsed time.
+		 *
+		 * @param winner the attempt that answered, null if none did
+		 */
+		private void finish(final Attempt winner) {
+			done = true;
+			final long now = System.nanoTime();
+			for (Attempt attempt : outstanding) {
+				if (attempt.backend.remove(attempt) && winner != null
+						&& attempt.sendTime < winner.sendTime) {
+					attempt.backend.upstream.recordOvertaken(now - attempt.sendTime);
+				}
+			}
+			outstanding.clear();
+			if (timeout != null) {
+				timeout.cancel(false);
+			}
+			if (hedge != null) {
+				hedge.cancel(false);
+			}
+		}
+
+	}
+
+	private static final class Attempt {
+
+		private final Exchange exchange;
+
+		private final Backend backend;
+
+		private Socket socket;
+
+		private int id;
+
+		private long sendTime;
+
+		Attempt(Exchange exchange, Backend backend) {
+			this.exchange = exchange;
+			this.backend = backend;
+		}
+
+	}
+
+	private final class Backend {
+
+		private final Upstream upstream;
+
+		private final Socket[] sockets;
+
+		private final AtomicInteger next = new AtomicInteger();
+
+		Backend(Upstream upstream, int socketCount) throws IOException {
+			this.upstream = upstream;
+			this.sockets = new Socket[socketCount];
+			for (int i = 0; i < socketCount; i++) {
+				DatagramChannel channel = DatagramChannel.open();
+				sockets[i] = new Socket(this, channel);
+				channel.configureBlocking(false);
+				channel.connect(upstream.getAddress());
+				channel.register(selector, SelectionKey.OP_READ, sockets[i]);
+			}
+		}
+
+		/**
+		 * Register and send an attempt, the exchange monitor is held by the caller.
+		 */
+		boolean send(final Attempt attempt) {
+			final Socket socket = sockets[Math.floorMod(next.getAndIncrement(),
+					sockets.length)];
+			final int id = socket.register(attempt);
+			if (id < 0) {
+				LOGGER.warn("no free transaction id to {}", upstream.getAddress());
+				return false;
+			}
+			final ByteBuffer message = ByteBuffer.wrap(attempt.exchange.query);
+			DnsWireUtils.setId(message, id);
+			attempt.sendTime = System.nanoTime();
+			try {
+				if (socket.channel.write(message) == 0) {
+					throw new IOException("socket send buffer is full");
+				}
+				return true;
+			}
+			catch (IOException ex) {
+				LOGGER.debug("send query to {} failed : {}", upstream.getAddress(),
+						ex.getMessage());
+				socket.inflight.compareAndSet(id, attempt, null);
+				return false;
+			}
+			finally {
+				DnsWireUtils.setId(message, attempt.exchange.originalId);
+			}
+		}
+
+		boolean remove(final Attempt attempt) {
+			return attempt.socket.inflight.compareAndSet(attempt.id, attempt, null);
+		}
+
+		void failAll(final Throwable ex) {
+			for (Socket socket : sockets) {
+				if (socket == null) {
+					continue;
+				}
+				for (int id = 0; id < ID_SPACE; id++) {
+					final Attempt attempt = socket.inflight.get(id);
+					if (attempt != null && remove(attempt)) {
+						attempt.exchange.future.completeExceptionally(ex);
+					}
+				}
+			}
+		}
+
+		void close() {
+			for (Socket socket : sockets) {
+				if (socket == null) {
+					continue;
+				}
+				try {
+					socket.channel.close();
+				}
+				catch (IOException ignore) {
+				}
+			}
+		}
+
+	}
+
+	private final class Socket {
+
+		private final Backend backend;
+
+		private final DatagramChannel channel;
+
+		/**
+		 * Outstanding sends indexed by the transaction id used on this socket.
+		 */
+		private final AtomicReferenceArray<Attempt> inflight = new AtomicReferenceArray<>(
+				ID_SPACE);
+
+		Socket(Backend backend, DatagramChannel channel) {
+			this.backend = backend;
+			this.channel = channel;
+		}
+
+		int register(final Attempt attempt) {
+			final ThreadLocalRandom random = ThreadLocalRandom.current();
+			for (int i = 0; i < MAX_ID_ATTEMPTS; i++) {
+				final int id = random.nextInt(ID_SPACE);
+				if (inflight.compareAndSet(id, null, attempt)) {
+					attempt.socket = this;
+					attempt.id = id;
+					return id;
+				}
+			}
+			return -1;
+		}
+
+		void drain(final ByteBuffer buffer) throws IOException {
+			for (;;) {
+				buffer.clear();
+				try {
+					if (channel.read(buffer) <= 0) {
+						return;
+					}
+				}
+				catch (PortUnreachableException ex) {
+					LOGGER.debug("backend dns {} is unreachable",
+							backend.upstream.getAddress());
+					return;
+				}
+				buffer.flip();
+				if (buffer.limit() < DnsWireUtils.HEADER_LENGTH) {
+					continue;
+				}
+				final int id = DnsWireUtils.getId(buffer);
+				final Attempt attempt = inflight.get(id);
+				if (attempt == null || !DnsWireUtils.regionEqualsIgnoreCase(buffer,
+						DnsWireUtils.HEADER_LENGTH, attempt.exchange.question)) {
+					LOGGER.debug("discard unexpected response {} from {}", id,
+							backend.upstream.getAddress());
+					continue;
+				}
+				if (!inflight.compareAndSet(id, attempt, null)) {
+					continue;
+				}
+				final byte[] response = new byte[buffer.remaining()];
+				buffer.get(response);
+				DnsWireUtils.setId(response, attempt.exchange.originalId);
+				attempt.exchange.onResponse(attempt, response);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.conf.nacos.dns.UpstreamConfig;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the queries that miss nacos: answered from {@link UpstreamCache} when
+ * possible, otherwise forwarded by {@link UpstreamForwarder}, with identical questions in
+ * flight coalesced into one backend request.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public class UpstreamResolver {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamResolver.class);
+
+	private final UpstreamForwarder forwarder;
+
+	private final UpstreamCache cache;
+
+	/**
+	 * Backend requests in flight, shared by every query with the same question.
+	 */
+	private final Map<QuestionKey, CompletableFuture<byte[]>> inflight = new ConcurrentHashMap<>(
+			64);
+
+	private final LongAdder coalesced = new LongAdder();
+
+	public UpstreamResolver(List<InetSocketAddress> backends, UpstreamConfig config,
+			int bufferSize) throws IOException {
+		this.forwarder = new UpstreamForwarder(backends, config, bufferSize);
+		this.cache = config.getCacheSize() > 0
+				? new UpstreamCache(config.getCacheSize(), config.getCacheMaxTtl(),
+						config.getNegativeCacheMaxTtl())
+				: null;
+	}
+
+	/**
+	 * Resolve a query without blocking. Concurrent queries for the same question share
+	 * one backend request.
+	 *
+	 * @param query the query between position and limit, read before this method returns
+	 * @return the response carrying the query's own transaction id and question name
+	 */
+	public CompletableFuture<byte[]> resolve(final ByteBuffer query) {
+		return resolve(query, false);
+	}
+
+	/**
+	 * @param query the query between position and limit, read before this method returns
+	 * @param stream whether the client asked over TCP, a truncated response is then
+	 *     asked again over TCP, the client would only retry over TCP itself
+	 * @return the response carrying the query's own transaction id and question name
+	 */
+	public CompletableFuture<byte[]> resolve(final ByteBuffer query,
+			final boolean stream) {
+		if (!stream) {
+			return resolveOverUdp(query);
+		}
+		final ByteBuffer own = copyOf(query);
+		return resolveOverUdp(query).thenCompose(response -> DnsWireUtils
+				.isTruncated(ByteBuffer.wrap(response)) ? forwarder.forwardOverTcp(own)
+						: CompletableFuture.completedFuture(response));
+	}
+
+	private CompletableFuture<byte[]> resolveOverUdp(final ByteBuffer query) {
+		final ByteBuffer message = query.slice();
+		final QuestionKey key = QuestionKey.of(message);
+		if (Objects.isNull(key)) {
+			return forwarder.forward(message);
+		}
+		if (Objects.nonNull(cache)) {
+			final byte[] cached = cache.get(key, message);
+			if (Objects.nonNull(cached)) {
+				return CompletableFuture.completedFuture(cached);
+			}
+		}
+
+		final CompletableFuture<byte[]> created = new CompletableFuture<>();
+		final CompletableFuture<byte[]> shared = inflight.putIfAbsent(key, created);
+		if (Objects.nonNull(shared)) {
+			coalesced.increment();
+			// the query is only readable until this method returns
+			final ByteBuffer own = copyOf(message);
+			return shared.thenApply(response -> forQuery(response, own));
+		}
+		forwarder.forward(message).whenComplete((response, ex) -> {
+			// cache first, a query arriving after the removal must hit it
+			if (Objects.isNull(ex) && Objects.nonNull(cache)) {
+				cache.put(key, response);
+			}
+			inflight.remove(key, created);
+			if (Objects.isNull(ex)) {
+				created.complete(response);
+			}
+			else {
+				created.completeExceptionally(ex);
+			}
+		});
+		return created;
+	}
+
+	private static ByteBuffer copyOf(final ByteBuffer query) {
+		final ByteBuffer copy = ByteBuffer.allocate(query.remaining())
+				.put(query.duplicate());
+		copy.flip();
+		return copy;
+	}
+
+	/**
+	 * The shared response carries the id and the question name case of the first query,
+	 * a coalesced one gets a copy with its own.
+	 */
+	private static byte[] forQuery(final byte[] response, final ByteBuffer query) {
+		final byte[] copy = response.clone();
+		DnsWireUtils.setId(copy, DnsWireUtils.getId(query));
+		DnsWireUtils.copyQuestionName(copy, query);
+		return copy;
+	}
+
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	public UpstreamCache getCache() {
+		return cache;
+	}
+
+	public void shutdown() {
+		LOGGER.info("upstreams at shutdown : {}", forwarder.describeUpstreams());
+		forwarder.shutdown();
+		LOGGER.info("upstream cache at shutdown : {}, coalesced queries : {}", cache,
+				getCoalescedCount());
+	}
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Absolute-offset helpers over dns wire format, none of them moves the buffer position.
+ *
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class DnsWireUtils {
+
+	public static final int HEADER_LENGTH = 12;
+
+	public static final int ID_OFFSET = 0;
+
+	public static final int FLAGS_OFFSET = 2;
+
+	public static final int QDCOUNT_OFFSET = 4;
+
+	public static final int ANCOUNT_OFFSET = 6;
+
+	public static final int NSCOUNT_OFFSET = 8;
+
+	public static final int ARCOUNT_OFFSET = 10;
+
+	/**
+	 * A compression pointer to the question name, which always starts right after the
+	 * header.
+	 */
+	public static final int QUESTION_POINTER = 0xC000 | HEADER_LENGTH;
+
+	public static final int TYPE_A = 1;
+
+	public static final int TYPE_SOA = 6;
+
+	public static final int TYPE_AAAA = 28;
+
+	public static final int TYPE_SRV = 33;
+
+	public static final int TYPE_OPT = 41;
+
+	public static final int TYPE_ANY = 255;
+
+	public static final int CLASS_IN = 1;
+
+	public static final int RCODE_NOERROR = 0;
+
+	public static final int RCODE_SERVFAIL = 2;
+
+	public static final int RCODE_NXDOMAIN = 3;
+
+	public static final int RCODE_REFUSED = 5;
+
+	/**
+	 * Extended rcode, the upper 8 bits travel in the OPT record.
+	 */
+	public static final int RCODE_BADVERS = 16;
+
+	/**
+	 * Largest UDP message a client without EDNS(0) accepts.
+	 */
+	public static final int MAX_UDP_LENGTH = 512;
+
+	private static final int FLAG_QR = 0x8000;
+
+	private static final int OPCODE_MASK = 0x7800;
+
+	private static final int FLAG_TC = 0x0200;
+
+	private static final int FLAG_RD = 0x0100;
+
+	private static final int FLAG_RA = 0x0080;
+
+	private static final int POINTER_MASK = 0xC0;
+
+
+	public static int readUnsignedShort(final ByteBuffer buffer, final int offset) {
+		return buffer.getShort(offset) & 0xffff;
+	}
+
+	public static long readUnsignedInt(final ByteBuffer buffer, final int offset) {
+		return buffer.getInt(offset) & 0xffffffffL;
+	}
+
+	public static int getId(final ByteBuffer buffer) {
+		return readUnsignedShort(buffer, ID_OFFSET);
+	}
+
+	public static void setId(final ByteBuffer buffer, final int id) {
+		buffer.putShort(ID_OFFSET, (short) id);
+	}
+
+	public static void setId(final byte[] data, final int id) {
+		data[ID_OFFSET] = (byte) (id >>> 8);
+		data[ID_OFFSET + 1] = (byte) id;
+	}
+
+	public static int getRCode(final ByteBuffer buffer) {
+		return readUnsignedShort(buffer, FLAGS_OFFSET) & 0x0f;
+	}
+
+	public static boolean isTruncated(final ByteBuffer buffer) {
+		return (readUnsignedShort(buffer, FLAGS_OFFSET) & FLAG_TC) != 0;
+	}
+
+	/**
+	 * Turn a query into an empty response in place, keeping the question. The buffer is
+	 * left ready to be sent.
+	 *
+	 * @param message the query, header at index 0
+	 * @param rCode response code
+	 * @return false if the message has no valid question or is a response itself, it
+	 *     must be dropped; answering a response could loop between two servers
+	 */
+	public static boolean toErrorResponse(final ByteBuffer message, final int rCode) {
+		final int questionEnd = questionEnd(message);
+		if (questionEnd < 0) {
+			return false;
+		}
+		final int flags = readUnsignedShort(message, FLAGS_OFFSET);
+		if ((flags & FLAG_QR) != 0) {
+			return false;
+		}
+		message.putShort(FLAGS_OFFSET, (short) (FLAG_QR
+				| (flags & (OPCODE_MASK | FLAG_RD)) | FLAG_RA | (rCode & 0x0f)));
+		message.putShort(ANCOUNT_OFFSET, (short) 0);
+		message.putShort(NSCOUNT_OFFSET, (short) 0);
+		message.putShort(ARCOUNT_OFFSET, (short) 0);
+		message.limit(questionEnd);
+		message.position(0);
+		return true;
+	}
+
+	/**
+	 * Read the question name of a single question message as dotted text with the
+	 * trailing dot, the same form dnsjava prints.
+	 *
+	 * @param buffer message
+	 * @return the name, or null if there is no valid question or it is compressed
+	 */
+	public static String readQuestionName(final ByteBuffer buffer) {
+		if (questionEnd(buffer) < 0) {
+			return null;
+		}
+		int position = HEADER_LENGTH;
+		int len = buffer.get(position) & 0xff;
+		if (len == 0) {
+			return ".";
+		}
+		final StringBuilder name = new StringBuilder(64);
+		while (len != 0) {
+			if ((len & POINTER_MASK) != 0) {
+				return null;
+			}
+			for (int i = 1; i <= len; i++) {
+				name.append((char) (buffer.get(position + i) & 0xff));
+			}
+			name.append('.');
+			position += len + 1;
+			len = buffer.get(position) & 0xff;
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Encode a dotted name without compression, for rdata that is built ahead of time.
+	 *
+	 * @param name dotted name, with or without the trailing dot
+	 * @return the wire form, ending with the root label
+	 */
+	public static byte[] encodeName(final String name) {
+		final int end = name.endsWith(".") ? name.length() - 1 : name.length();
+		final byte[] wire = new byte[end + 2];
+		int position = 0;
+		int from = 0;
+		while (from < end) {
+			int dot = name.indexOf('.', from);
+			if (dot < 0 || dot > end) {
+				dot = end;
+			}
+			final int len = dot - from;
+			if (len == 0 || len > 63) {
+				throw new IllegalArgumentException("invalid domain name : " + name);
+			}
+			wire[position++] = (byte) len;
+			for (int i = from; i < dot; i++) {
+				wire[position++] = (byte) name.charAt(i);
+			}
+			from = dot + 1;
+		}
+		wire[position++] = 0;
+		return position == wire.length ? wire : Arrays.copyOf(wire, position);
+	}
+
+	/**
+	 * Skip a possibly compressed domain name.
+	 *
+	 * @param buffer message
+	 * @param offset where the name starts
+	 * @return the offset right after the name, or -1 if the name is malformed
+	 */
+	public static int skipName(final ByteBuffer buffer, final int offset) {
+		int position = offset;
+		final int limit = buffer.limit();
+		while (position < limit) {
+			final int len = buffer.get(position) & 0xff;
+			if (len == 0) {
+				return position + 1;
+			}
+			if ((len & POINTER_MASK) == POINTER_MASK) {
+				return position + 2 <= limit ? position + 2 : -1;
+			}
+			if ((len & POINTER_MASK) != 0) {
+				return -1;
+			}
+			position += len + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Give a response the question name of the query it answers, in the query's own
+	 * case. A response shared by several clients carries the case of the first one, which
+	 * a client randomizing the case of its names (0x20) rejects.
+	 *
+	 * @param response response to the same question, modified in place
+	 * @param query query, header at index 0
+	 * @return false if the names differ in length, the response is then unchanged
+	 */
+	public static boolean copyQuestionName(final byte[] response, final ByteBuffer query) {
+		final int nameEnd = skipName(query, HEADER_LENGTH);
+		if (nameEnd < 0 || response.length < nameEnd
+				|| skipName(ByteBuffer.wrap(response), HEADER_LENGTH) != nameEnd) {
+			return false;
+		}
+		for (int i = HEADER_LENGTH; i < nameEnd; i++) {
+			response[i] = query.get(i);
+		}
+		return true;
+	}
+
+	/**
+	 * Find the end of the question section of a single question message.
+	 *
+	 * @param buffer message
+	 * @return the offset right after QCLASS, or -1 if there is no valid question
+	 */
+	public static int questionEnd(final ByteBuffer buffer) {
+		if (buffer.limit() < HEADER_LENGTH
+				|| readUnsignedShort(buffer, QDCOUNT_OFFSET) != 1) {
+			return -1;
+		}
+		final int nameEnd = skipName(buffer, HEADER_LENGTH);
+		if (nameEnd < 0 || nameEnd + 4 > buffer.limit()) {
+			return -1;
+		}
+		return nameEnd + 4;
+	}
+
+	/**
+	 * Compare a region with a byte array, ignoring ASCII case as dns names do.
+	 *
+	 * @param buffer message
+	 * @param offset region start
+	 * @param expect bytes to compare with
+	 * @return true if equal
+	 */
+	public static boolean regionEqualsIgnoreCase(final ByteBuffer buffer,
+			final int offset, final byte[] expect) {
+		if (offset < 0 || offset + expect.length > buffer.limit()) {
+			return false;
+		}
+		for (int i = 0; i < expect.length; i++) {
+			if (toLowerCase(buffer.get(offset + i)) != toLowerCase(expect[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static byte toLowerCase(final byte b) {
+		return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+	}
+
+}
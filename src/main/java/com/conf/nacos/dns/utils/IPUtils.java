@@ -30,25 +30,82 @@
 
 package com.conf.nacos.dns.utils;
 
-import java.util.regex.Pattern;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
  */
 public final class IPUtils {
 
-	private static final String IPV4_REGX = "^((25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\.){3}(25[0-5]|2[0-4]\\d|[01]?\\d\\d?)$";
-	private static final String IPV6_REGX = "^([\\da-fA-F]{1,4}:){6}((25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\.){3}(25[0-5]|2[0-4]\\d|[01]?\\d\\d?)|::([\\da−fA−F]1,4:)0,4((25[0−5]|2[0−4]\\d|[01]?\\d\\d?)\\.)3(25[0−5]|2[0−4]\\d|[01]?\\d\\d?)|::([\\da−fA−F]1,4:)0,4((25[0−5]|2[0−4]\\d|[01]?\\d\\d?)\\.)3(25[0−5]|2[0−4]\\d|[01]?\\d\\d?)|^([\\da-fA-F]{1,4}:):([\\da-fA-F]{1,4}:){0,3}((25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\.){3}(25[0-5]|2[0-4]\\d|[01]?\\d\\d?)|([\\da−fA−F]1,4:)2:([\\da−fA−F]1,4:)0,2((25[0−5]|2[0−4]\\d|[01]?\\d\\d?)\\.)3(25[0−5]|2[0−4]\\d|[01]?\\d\\d?)|([\\da−fA−F]1,4:)2:([\\da−fA−F]1,4:)0,2((25[0−5]|2[0−4]\\d|[01]?\\d\\d?)\\.)3(25[0−5]|2[0−4]\\d|[01]?\\d\\d?)|^([\\da-fA-F]{1,4}:){3}:([\\da-fA-F]{1,4}:){0,1}((25[0-5]|2[0-4]\\d|[01]?\\d\\d?)\\.){3}(25[0-5]|2[0-4]\\d|[01]?\\d\\d?)|([\\da−fA−F]1,4:)4:((25[0−5]|2[0−4]\\d|[01]?\\d\\d?)\\.)3(25[0−5]|2[0−4]\\d|[01]?\\d\\d?)|([\\da−fA−F]1,4:)4:((25[0−5]|2[0−4]\\d|[01]?\\d\\d?)\\.)3(25[0−5]|2[0−4]\\d|[01]?\\d\\d?)|^([\\da-fA-F]{1,4}:){7}[\\da-fA-F]{1,4}|:((:[\\da−fA−F]1,4)1,6|:)|:((:[\\da−fA−F]1,4)1,6|:)|^[\\da-fA-F]{1,4}:((:[\\da-fA-F]{1,4}){1,5}|:)|([\\da−fA−F]1,4:)2((:[\\da−fA−F]1,4)1,4|:)|([\\da−fA−F]1,4:)2((:[\\da−fA−F]1,4)1,4|:)|^([\\da-fA-F]{1,4}:){3}((:[\\da-fA-F]{1,4}){1,3}|:)|([\\da−fA−F]1,4:)4((:[\\da−fA−F]1,4)1,2|:)|([\\da−fA−F]1,4:)4((:[\\da−fA−F]1,4)1,2|:)|^([\\da-fA-F]{1,4}:){5}:([\\da-fA-F]{1,4})?|([\\da−fA−F]1,4:)6:|([\\da−fA−F]1,4:)6:";
-
-	private static final Pattern IPV4 = Pattern.compile(IPV4_REGX);
-	private static final Pattern IPV6 = Pattern.compile(IPV6_REGX);
+	/**
+	 * Parse a comma separated address list such as {@code 8.8.8.8,1.1.1.1:53,[::1]:53}.
+	 *
+	 * @param addresses address list
+	 * @param defaultPort port used when an address has none
+	 * @return {@link List<InetSocketAddress>}
+	 * @throws IllegalArgumentException naming the first entry that is not valid
+	 */
+	public static List<InetSocketAddress> toSocketAddresses(final String addresses,
+			final int defaultPort) {
+		final List<InetSocketAddress> result = new ArrayList<>();
+		for (String address : addresses.split(",")) {
+			address = address.trim();
+			if (address.isEmpty()) {
+				continue;
+			}
+			String host = address;
+			String port = null;
+			if (address.startsWith("[")) {
+				final int end = address.indexOf(']');
+				if (end < 0) {
+					throw invalid(address, "']' is missing");
+				}
+				host = address.substring(1, end);
+				if (end + 1 < address.length()) {
+					if (address.charAt(end + 1) != ':') {
+						throw invalid(address, "only ':port' may follow ']'");
+					}
+					port = address.substring(end + 2);
+				}
+			}
+			else if (address.indexOf(':') == address.lastIndexOf(':')
+					&& address.indexOf(':') >= 0) {
+				final int index = address.indexOf(':');
+				host = address.substring(0, index);
+				port = address.substring(index + 1);
+			}
+			if (host.isEmpty()) {
+				throw invalid(address, "the host is empty");
+			}
+			final InetSocketAddress socketAddress = new InetSocketAddress(host,
+					port == null ? defaultPort : parsePort(address, port));
+			if (socketAddress.isUnresolved()) {
+				throw invalid(address, "the host can not be resolved");
+			}
+			result.add(socketAddress);
+		}
+		return result;
+	}
 
-	public static boolean isIPv4(final String ip) {
-		return IPV4.matcher(ip).matches();
+	private static int parsePort(final String address, final String port) {
+		try {
+			final int value = Integer.parseInt(port);
+			if (value > 0 && value <= 0xffff) {
+				return value;
+			}
+		}
+		catch (NumberFormatException ignore) {
+			// reported below
+		}
+		throw invalid(address, "the port must be a number from 1 to 65535");
 	}
 
-	public static boolean isIPv6(final String ip) {
-		return IPV6.matcher(ip).matches();
+	private static IllegalArgumentException invalid(final String address,
+			final String reason) {
+		return new IllegalArgumentException(
+				"address '" + address + "' is not valid, " + reason);
 	}
 
 }
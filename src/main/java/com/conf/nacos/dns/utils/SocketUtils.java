@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.utils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.NetworkChannel;
+
+/**
+ * @author <a href="mailto:liaochuntao@live.com">liaochuntao</a>
+ */
+public final class SocketUtils {
+
+	/**
+	 * {@code StandardSocketOptions.SO_REUSEPORT} only exists since JDK 9, it is looked up
+	 * reflectively so that the server still runs on JDK 8.
+	 */
+	private static final SocketOption<Boolean> SO_REUSEPORT = lookupReusePort();
+
+	/**
+	 * The option exists on JDK 9+, but not every platform supports it, e.g. Windows.
+	 */
+	private static final boolean REUSE_PORT_SUPPORTED = probeReusePort();
+
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> lookupReusePort() {
+		try {
+			Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+			return (SocketOption<Boolean>) field.get(null);
+		}
+		catch (Throwable ignore) {
+			return null;
+		}
+	}
+
+	private static boolean probeReusePort() {
+		if (SO_REUSEPORT == null) {
+			return false;
+		}
+		try (DatagramChannel channel = DatagramChannel.open()) {
+			return channel.supportedOptions().contains(SO_REUSEPORT);
+		}
+		catch (Throwable ignore) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return whether SO_REUSEPORT is available on this JDK and platform
+	 */
+	public static boolean isReusePortAvailable() {
+		return REUSE_PORT_SUPPORTED;
+	}
+
+	/**
+	 * Set SO_RCVBUF and SO_SNDBUF, a size of 0 keeps the system default. The kernel may
+	 * grant less than asked, e.g. above net.core.rmem_max.
+	 *
+	 * @return the receive buffer size in effect
+	 */
+	public static int setBufferSizes(final NetworkChannel channel,
+			final int receiveBufferSize, final int sendBufferSize) throws IOException {
+		if (receiveBufferSize > 0) {
+			channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+		}
+		if (sendBufferSize > 0
+				&& channel.supportedOptions().contains(StandardSocketOptions.SO_SNDBUF)) {
+			channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+		}
+		return channel.getOption(StandardSocketOptions.SO_RCVBUF);
+	}
+
+	/**
+	 * @return false if SO_REUSEPORT is not supported, the channel is left unchanged
+	 */
+	public static boolean enableReusePort(final NetworkChannel channel)
+			throws IOException {
+		if (SO_REUSEPORT == null || !channel.supportedOptions().contains(SO_REUSEPORT)) {
+			return false;
+		}
+		channel.setOption(SO_REUSEPORT, true);
+		return true;
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GroupResolverTest {
+
+	@Test
+	public void testFirstDeclaredRuleWins() {
+		Map<String, String> rules = new LinkedHashMap<>();
+		rules.put("order-v2\\..*", "V2");
+		rules.put("order.*", "ORDER");
+		rules.put("(\\w+)-\\1\\.", "TWICE");
+		GroupResolver resolver = new GroupResolver(rules, "DEFAULT_GROUP", 2);
+		Assert.assertEquals("V2", resolver.resolve("order-v2.svc."));
+		Assert.assertEquals("ORDER", resolver.resolve("order-v1.svc."));
+		Assert.assertEquals("TWICE", resolver.resolve("pay-pay."));
+		Assert.assertEquals("DEFAULT_GROUP", resolver.resolve("pay-stock."));
+		// memoized, or matched again once evicted from the memo
+		Assert.assertEquals("V2", resolver.resolve("order-v2.svc."));
+
+		rules.remove("(\\w+)-\\1\\.");
+		resolver = new GroupResolver(rules, "DEFAULT_GROUP", 16);
+		Assert.assertEquals("V2", resolver.resolve("order-v2.svc."));
+		Assert.assertEquals("ORDER", resolver.resolve("order."));
+		Assert.assertEquals("DEFAULT_GROUP", resolver.resolve("stock."));
+	}
+
+	@Test
+	public void testRulesWithNamedGroupsStillResolve() {
+		Map<String, String> rules = new LinkedHashMap<>();
+		rules.put("(?<svc>pay)\\..*", "PAY");
+		rules.put("(?<svc>stock)\\..*", "STOCK");
+		rules.put("(?<r0>order)\\.", "ORDER");
+		GroupResolver resolver = new GroupResolver(rules, "DEFAULT_GROUP", 16);
+		Assert.assertEquals("PAY", resolver.resolve("pay.svc."));
+		Assert.assertEquals("STOCK", resolver.resolve("stock.svc."));
+		Assert.assertEquals("ORDER", resolver.resolve("order."));
+		Assert.assertEquals("DEFAULT_GROUP", resolver.resolve("cart."));
+	}
+
+}
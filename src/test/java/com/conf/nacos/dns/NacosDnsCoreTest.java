@@ -17,6 +17,81 @@
 
 package com.conf.nacos.dns;
 
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.alibaba.nacos.api.naming.NamingService;
+import com.conf.nacos.dns.pojo.InstanceRecord;
+import com.conf.nacos.dns.snapshot.ServiceSnapshot;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
 public class NacosDnsCoreTest {
 
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * A naming client of an unreachable server, as nacos-client 1.3 behaves: queries
+	 * answer an empty list and the server is DOWN.
+	 */
+	private static NamingService unreachable(final AtomicInteger queries) {
+		return (NamingService) Proxy.newProxyInstance(
+				NacosDnsCoreTest.class.getClassLoader(),
+				new Class<?>[] { NamingService.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getAllInstances":
+						queries.incrementAndGet();
+						return Collections.emptyList();
+					case "getServerStatus":
+						return "DOWN";
+					default:
+						return null;
+					}
+				});
+	}
+
+	@Test
+	public void testRestoredServiceSurvivesUnreachableNacos() throws Throwable {
+		final String file = new File(folder.getRoot(), "services.snapshot").getPath();
+		final List<InstanceRecord> records = Collections
+				.singletonList(InstanceRecord.builder().ip("10.0.0.1").port(80).build());
+		ServiceSnapshot snapshot = ServiceSnapshot.open(file, 4096);
+		snapshot.write("order.", records);
+		snapshot.close();
+
+		final NacosDnsConfig config = new NacosDnsConfig();
+		config.setResolver(new NamingResolverConfig("DEFAULT_GROUP"));
+		config.getSnapshot().setPath(file);
+		config.getPrewarm().setEnabled(false);
+		config.getKnownServices().setEnabled(false);
+		// the cache is swept, and the restored service refetched, every second
+		config.getServiceCache().setIdleTimeout(4000L);
+		final AtomicInteger queries = new AtomicInteger();
+		final NacosDnsCore core = new NacosDnsCore(config, () -> unreachable(queries));
+		try {
+			Assert.assertNotNull(core.selectAnswer("order.", DnsWireUtils.TYPE_A, false));
+			final long deadline = System.currentTimeMillis() + 5000L;
+			while (queries.get() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50L);
+			}
+			Assert.assertTrue(queries.get() > 0);
+			Thread.sleep(100L);
+			Assert.assertNotNull(core.selectAnswer("order.", DnsWireUtils.TYPE_A, false));
+		}
+		finally {
+			core.shutdown();
+		}
+
+		snapshot = ServiceSnapshot.open(file, 4096);
+		Assert.assertEquals(1, snapshot.load().get("order.").size());
+		snapshot.close();
+	}
+
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.conf.nacos.dns.constants.AddressFamily;
+import com.conf.nacos.dns.loadbalancer.RandomLoadBalancer;
+import com.conf.nacos.dns.loadbalancer.WeightLoadBalancer;
+import com.conf.nacos.dns.pojo.InstanceRecord;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NacosServiceTest {
+
+	private static InstanceRecord record(String ip) {
+		return InstanceRecord.builder().ip(ip).port(80).build();
+	}
+
+	@Test
+	public void testWeightBalancerPicksTheHeaviestFractionalWeight() {
+		WeightLoadBalancer balancer = new WeightLoadBalancer();
+		Assert.assertNull(balancer.selectOne());
+		InstanceRecord light = InstanceRecord.builder().ip("10.0.0.1").port(80).weight(0.3D)
+				.build();
+		InstanceRecord heavy = InstanceRecord.builder().ip("10.0.0.2").port(80).weight(0.5D)
+				.build();
+		balancer.recordChange(Arrays.asList(light, heavy));
+		Assert.assertSame(heavy, balancer.selectOne());
+		Assert.assertSame(heavy, balancer.select(1).get(0));
+	}
+
+	@Test
+	public void testRecordPacksItsAddressOnce() {
+		InstanceRecord v4 = record("10.0.0.1");
+		Assert.assertEquals(AddressFamily.IPV4, v4.getFamily());
+		Assert.assertArrayEquals(new byte[] { 10, 0, 0, 1 }, v4.getIpv4Address());
+		Assert.assertNull(v4.getIpv6Address());
+		Assert.assertEquals(AddressFamily.IPV6, record("fe80::1").getFamily());
+		Assert.assertEquals(16, record("fe80::1").getIpv6Address().length);
+		Assert.assertEquals(AddressFamily.NONE, record("db.invalid").getFamily());
+	}
+
+	@Test
+	public void testAnswersFromTheFamilyOfTheQuestion() {
+		NacosService service = new NacosService("order.", RandomLoadBalancer::new);
+		service.recordChange(Arrays.asList(record("10.0.0.1"),
+				record("fe80::1")));
+		for (int i = 0; i < 16; i++) {
+			Assert.assertEquals(16, service.selectAnswer(DnsWireUtils.TYPE_A).length);
+			Assert.assertEquals(28, service.selectAnswer(DnsWireUtils.TYPE_AAAA).length);
+		}
+		Assert.assertEquals(1, service.selectAnswers(DnsWireUtils.TYPE_AAAA, 8).size());
+
+		service.recordChange(
+				Collections.singletonList(record("10.0.0.1")));
+		Assert.assertNull(service.selectAnswer(DnsWireUtils.TYPE_AAAA));
+		Assert.assertTrue(service.selectAnswers(DnsWireUtils.TYPE_AAAA, 8).isEmpty());
+		Assert.assertNotNull(service.selectOne());
+	}
+
+	@Test
+	public void testSelectionNeverMissesDuringChanges() throws Exception {
+		final NacosService service = new NacosService("order.", RandomLoadBalancer::new);
+		service.recordChange(Collections.singletonList(record("10.0.0.1")));
+		final Thread changer = new Thread(() -> {
+			for (int i = 0; i < 2000; i++) {
+				service.recordChange(Arrays.asList(record("10.0.0." + (i % 200 + 1)),
+						record("10.0.1." + (i % 200 + 1))));
+			}
+		});
+		changer.start();
+		while (changer.isAlive()) {
+			Assert.assertFalse(service.selectAnswers(DnsWireUtils.TYPE_A, 8).isEmpty());
+			Assert.assertFalse(service.selectInstances(8).isEmpty());
+		}
+		changer.join();
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.conf.nacos.dns.loadbalancer.RandomLoadBalancer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServiceCacheTest {
+
+	private static NacosService service(String domain, int queries) {
+		NacosService service = new NacosService(domain, RandomLoadBalancer::new);
+		for (int i = 0; i < queries; i++) {
+			service.selectOne();
+		}
+		return service;
+	}
+
+	@Test
+	public void testEvictsLeastFrequentWhenFull() {
+		List<String> evicted = new ArrayList<>();
+		ServiceCache cache = new ServiceCache(2, 0L,
+				service -> evicted.add(service.getDomain()));
+		cache.put(service("hot.", 10));
+		cache.put(service("cold.", 1));
+		NacosService fresh = service("fresh.", 0);
+		cache.put(fresh);
+
+		Assert.assertEquals(1, evicted.size());
+		Assert.assertEquals("cold.", evicted.get(0));
+		Assert.assertNotNull(cache.get("hot."));
+		Assert.assertSame(fresh, cache.get("fresh."));
+		Assert.assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testSweepExpiresIdleServices() {
+		List<String> evicted = new ArrayList<>();
+		ServiceCache cache = new ServiceCache(16, 1000L,
+				service -> evicted.add(service.getDomain()));
+		cache.put(service("idle.", 3));
+		cache.sweep(System.nanoTime());
+		Assert.assertEquals(1, cache.size());
+
+		cache.sweep(System.nanoTime() + TimeUnit.SECONDS.toNanos(2));
+		Assert.assertEquals(0, cache.size());
+		Assert.assertEquals("idle.", evicted.get(0));
+		Assert.assertEquals(1, cache.getExpirationCount());
+		Assert.assertEquals(0, cache.getEvictionCount());
+	}
+
+}
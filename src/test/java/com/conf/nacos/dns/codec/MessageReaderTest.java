@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.codec;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class MessageReaderTest {
+
+	private static final Name NAME = Name.fromConstantString("Order.Service.");
+
+	@Test
+	public void testReadQuestionAndOpt() {
+		Message query = Message.newQuery(Record.newRecord(NAME, Type.AAAA, DClass.IN));
+		query.getHeader().setID(0x1357);
+		query.addRecord(new OPTRecord(1232, 0, 0, ExtendedFlags.DO), Section.ADDITIONAL);
+
+		MessageReader reader = new MessageReader();
+		Assert.assertTrue(reader.read(ByteBuffer.wrap(query.toWire())));
+		Assert.assertEquals(0x1357, reader.getId());
+		Assert.assertFalse(reader.isResponse());
+		Assert.assertEquals("Order.Service.", reader.getQName());
+		Assert.assertEquals(Type.AAAA, reader.getQType());
+		Assert.assertEquals(DClass.IN, reader.getQClass());
+		Assert.assertTrue(reader.hasOpt());
+		Assert.assertEquals(1232, reader.getUdpPayloadSize());
+		Assert.assertTrue(reader.isDnssecOk());
+	}
+
+	@Test
+	public void testRejectTruncatedMessage() {
+		Message query = Message.newQuery(Record.newRecord(NAME, Type.A, DClass.IN));
+		query.addRecord(new OPTRecord(1232, 0, 0), Section.ADDITIONAL);
+		byte[] wire = query.toWire();
+
+		MessageReader reader = new MessageReader();
+		Assert.assertFalse(reader.read(ByteBuffer.wrap(wire, 0, wire.length - 3)));
+		Assert.assertFalse(reader.read(ByteBuffer.wrap(wire, 0, 8)));
+		Assert.assertTrue(reader.read(ByteBuffer.wrap(wire)));
+		Assert.assertFalse(reader.isDnssecOk());
+	}
+
+	@Test
+	public void testReadEdnsVersion() {
+		Message query = Message.newQuery(Record.newRecord(NAME, Type.A, DClass.IN));
+		query.addRecord(new OPTRecord(4096, 0, 1), Section.ADDITIONAL);
+
+		MessageReader reader = new MessageReader();
+		Assert.assertTrue(reader.read(ByteBuffer.wrap(query.toWire())));
+		Assert.assertTrue(reader.hasOpt());
+		Assert.assertEquals(1, reader.getEdnsVersion());
+		Assert.assertEquals(4096, reader.getUdpPayloadSize());
+
+		Message plain = Message.newQuery(Record.newRecord(NAME, Type.A, DClass.IN));
+		Assert.assertTrue(reader.read(ByteBuffer.wrap(plain.toWire())));
+		Assert.assertFalse(reader.hasOpt());
+		Assert.assertEquals(0, reader.getEdnsVersion());
+		Assert.assertEquals(0, reader.getUdpPayloadSize());
+	}
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.codec;
+
+import java.nio.ByteBuffer;
+
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class MessageWriterTest {
+
+	private static final Name NAME = Name.fromConstantString("order.service.");
+
+	private static ByteBuffer query() {
+		Message message = Message.newQuery(Record.newRecord(NAME, Type.A, DClass.IN));
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		buffer.put(message.toWire());
+		buffer.flip();
+		return buffer;
+	}
+
+	private static ByteBuffer ednsQuery(int version) {
+		Message message = Message.newQuery(Record.newRecord(NAME, Type.A, DClass.IN));
+		message.addRecord(new OPTRecord(1232, 0, version), Section.ADDITIONAL);
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		buffer.put(message.toWire());
+		buffer.flip();
+		return buffer;
+	}
+
+	private static Message parse(ByteBuffer buffer) throws Exception {
+		byte[] wire = new byte[buffer.remaining()];
+		buffer.get(wire);
+		return new Message(wire);
+	}
+
+	private static int fill(MessageWriter writer) {
+		int written = 0;
+		while (written < 1000) {
+			writer.beginRecord(MessageWriter.SECTION_ANSWER, "order.service.", Type.A,
+					DClass.IN, 30);
+			writer.put(new byte[] { 10, 0, 0, (byte) written });
+			if (!writer.endRecord()) {
+				break;
+			}
+			written++;
+		}
+		return written;
+	}
+
+	private static void address(MessageWriter writer, int section, String name,
+			int last) {
+		writer.beginRecord(section, name, Type.A, DClass.IN, 30);
+		writer.put(new byte[] { 10, 0, 0, (byte) last });
+		writer.endRecord();
+	}
+
+	@Test
+	public void testOwnersAndSuffixesAreCompressed() throws Exception {
+		ByteBuffer buffer = query();
+		MessageReader request = new MessageReader();
+		Assert.assertTrue(request.read(buffer));
+		int questionEnd = request.getQuestionEnd();
+
+		MessageWriter writer = new MessageWriter();
+		writer.beginResponse(buffer, request, DnsWireUtils.RCODE_NOERROR, 512);
+		address(writer, MessageWriter.SECTION_ANSWER, "ORDER.service.", 1);
+		address(writer, MessageWriter.SECTION_ADDITIONAL, "node1.service", 2);
+		address(writer, MessageWriter.SECTION_ADDITIONAL, "node1.service.", 3);
+		writer.finish();
+
+		// pointer owner (2) + fixed (10) + rdata (4)
+		// "node1" label (6) + pointer (2) + fixed + rdata
+		// pointer owner + fixed + rdata
+		Assert.assertEquals(questionEnd + 16 + 22 + 16, buffer.limit());
+		byte[] wire = new byte[buffer.remaining()];
+		buffer.get(wire);
+		Message response = new Message(wire);
+		Record[] answers = response.getSectionArray(Section.ANSWER);
+		Record[] additional = response.getSectionArray(Section.ADDITIONAL);
+		Assert.assertEquals(NAME, answers[0].getName());
+		Assert.assertEquals(Name.fromConstantString("node1.service."),
+				additional[0].getName());
+		Assert.assertEquals(additional[0].getName(), additional[1].getName());
+	}
+
+	@Test
+	public void testRecordOverLimitIsRolledBackAndTruncates() throws Exception {
+		ByteBuffer buffer = query();
+		MessageReader request = new MessageReader();
+		Assert.assertTrue(request.read(buffer));
+
+		MessageWriter writer = new MessageWriter();
+		writer.beginResponse(buffer, request, DnsWireUtils.RCODE_NOERROR,
+				request.getQuestionEnd() + 20);
+		address(writer, MessageWriter.SECTION_ANSWER, "order.service.", 1);
+		address(writer, MessageWriter.SECTION_ANSWER, "order.service.", 2);
+		Assert.assertTrue(writer.isTruncated());
+		writer.finish();
+
+		byte[] wire = new byte[buffer.remaining()];
+		buffer.get(wire);
+		Message response = new Message(wire);
+		Assert.assertEquals(1, response.getSectionArray(Section.ANSWER).length);
+		Assert.assertTrue(response.getHeader().getFlag(Flags.TC));
+	}
+
+	@Test
+	public void testUnsupportedVersionIsAnsweredWithBadvers() throws Exception {
+		ByteBuffer buffer = ednsQuery(1);
+		MessageReader request = new MessageReader();
+		Assert.assertTrue(request.read(buffer));
+		Assert.assertEquals(1, request.getEdnsVersion());
+
+		MessageWriter writer = new MessageWriter();
+		writer.beginResponse(buffer, request, DnsWireUtils.RCODE_BADVERS, 512);
+		Assert.assertTrue(writer.writeOpt(1232, DnsWireUtils.RCODE_BADVERS, 0));
+		Message response = parse(writer.finish());
+		// the upper bits of the rcode travel in the OPT record
+		Assert.assertEquals(Rcode.BADVERS, response.getRcode());
+		Assert.assertEquals(1232, response.getOPT().getPayloadSize());
+		Assert.assertEquals(0, response.getOPT().getVersion());
+	}
+
+	@Test
+	public void testResponseWithoutEdnsStaysWithin512() throws Exception {
+		Message message = Message.newQuery(Record.newRecord(NAME, Type.A, DClass.IN));
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		buffer.put(message.toWire());
+		buffer.flip();
+		MessageReader request = new MessageReader();
+		Assert.assertTrue(request.read(buffer));
+		Assert.assertFalse(request.hasOpt());
+
+		MessageWriter writer = new MessageWriter();
+		writer.beginResponse(buffer, request, DnsWireUtils.RCODE_NOERROR,
+				DnsWireUtils.MAX_UDP_LENGTH);
+		int written = fill(writer);
+		ByteBuffer wire = writer.finish();
+		Assert.assertTrue(wire.remaining() <= DnsWireUtils.MAX_UDP_LENGTH);
+		Message response = parse(wire);
+		Assert.assertTrue(response.getHeader().getFlag(Flags.TC));
+		Assert.assertEquals(written, response.getSectionArray(Section.ANSWER).length);
+	}
+
+	@Test
+	public void testOversizedEdnsResponseKeepsOptAndTruncates() throws Exception {
+		ByteBuffer buffer = ednsQuery(0);
+		MessageReader request = new MessageReader();
+		Assert.assertTrue(request.read(buffer));
+		int payload = request.getUdpPayloadSize();
+
+		// room is kept for the OPT record, as the server does
+		MessageWriter writer = new MessageWriter();
+		writer.beginResponse(buffer, request, DnsWireUtils.RCODE_NOERROR, payload);
+		writer.limit(payload - MessageWriter.OPT_RECORD_LENGTH);
+		int written = fill(writer);
+		Assert.assertTrue(writer.isTruncated());
+		writer.limit(payload);
+		Assert.assertTrue(writer.writeOpt(payload, DnsWireUtils.RCODE_NOERROR, 0));
+		ByteBuffer wire = writer.finish();
+		Assert.assertTrue(wire.remaining() <= payload);
+		// more than the 512 bytes a plain query may get
+		Assert.assertTrue(wire.remaining() > DnsWireUtils.MAX_UDP_LENGTH);
+		Message response = parse(wire);
+		Assert.assertTrue(response.getHeader().getFlag(Flags.TC));
+		Assert.assertNotNull(response.getOPT());
+		Assert.assertEquals(written, response.getSectionArray(Section.ANSWER).length);
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.response;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.conf.nacos.dns.codec.MessageReader;
+import com.conf.nacos.dns.codec.MessageWriter;
+import com.conf.nacos.dns.constants.Constants;
+import com.conf.nacos.dns.pojo.InstanceRecord;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.AAAARecord;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class ServiceAnswersTest {
+
+	private static final Name NAME = Name.fromConstantString("order.service.");
+
+	private static ByteBuffer query(int type) {
+		Message message = Message.newQuery(Record.newRecord(NAME, type, DClass.IN));
+		message.getHeader().setID(0x2468);
+		ByteBuffer buffer = ByteBuffer.allocate(512);
+		buffer.put(message.toWire());
+		buffer.flip();
+		return buffer;
+	}
+
+	private static Message respond(ServiceAnswers answers, InstanceRecord record,
+			int type) throws Exception {
+		ByteBuffer buffer = query(type);
+		MessageReader request = new MessageReader();
+		Assert.assertTrue(request.read(buffer));
+		MessageWriter writer = new MessageWriter();
+		writer.beginResponse(buffer, request, DnsWireUtils.RCODE_NOERROR, 512);
+		Assert.assertTrue(writer.writeRecord(MessageWriter.SECTION_ANSWER,
+				answers.answerOf(record, type)));
+		writer.finish();
+		byte[] wire = new byte[buffer.remaining()];
+		buffer.get(wire);
+		return new Message(wire);
+	}
+
+	@Test
+	public void testAnswerKeepsClientHeaderAndQuestion() throws Exception {
+		InstanceRecord v4 = InstanceRecord.builder().ip("10.1.2.3").port(80).build();
+		InstanceRecord v6 = InstanceRecord.builder().ip("fe80::1").port(80).build();
+		ServiceAnswers answers = ServiceAnswers.build("order.service.", Arrays.asList(v4, v6), 0);
+
+		Message response = respond(answers, v4, Type.A);
+		Assert.assertEquals(0x2468, response.getHeader().getID());
+		Assert.assertTrue(response.getHeader().getFlag(Flags.QR));
+		Assert.assertEquals(NAME, response.getQuestion().getName());
+		ARecord a = (ARecord) response.getSectionArray(Section.ANSWER)[0];
+		Assert.assertEquals(NAME, a.getName());
+		Assert.assertEquals("10.1.2.3", a.getAddress().getHostAddress());
+
+		AAAARecord aaaa = (AAAARecord) respond(answers, v6, Type.AAAA)
+				.getSectionArray(Section.ANSWER)[0];
+		Assert.assertEquals(NAME, aaaa.getName());
+		Assert.assertEquals("fe80:0:0:0:0:0:0:1", aaaa.getAddress().getHostAddress());
+	}
+
+	@Test
+	public void testNoAnswerForOtherFamilyOrUnknownRecord() {
+		InstanceRecord v4 = InstanceRecord.builder().ip("10.1.2.3").port(80).build();
+		InstanceRecord host = InstanceRecord.builder().ip("db.invalid").port(80).build();
+		ServiceAnswers answers = ServiceAnswers.build("order.service.", Arrays.asList(v4, host), 0);
+		Assert.assertNull(answers.answerOf(v4, DnsWireUtils.TYPE_AAAA));
+		Assert.assertNull(answers.answerOf(host, DnsWireUtils.TYPE_A));
+		Assert.assertNull(answers.answerOf(
+				InstanceRecord.builder().ip("10.1.2.3").port(80).build(),
+				DnsWireUtils.TYPE_A));
+	}
+
+	@Test
+	public void testSrvAnswerPointsAtTargetWithAddress() throws Exception {
+		InstanceRecord weighted = InstanceRecord.builder().ip("10.1.2.3").port(8080)
+				.weight(0.5D).build();
+		InstanceRecord pinned = InstanceRecord.builder().ip("10.1.2.4").port(9090)
+				.metadata(Collections.singletonMap(Constants.SRV_PRIORITY_METADATA, "3"))
+				.build();
+		ServiceAnswers answers = ServiceAnswers.build("order.service.",
+				Arrays.asList(weighted, pinned), 0);
+
+		SRVRecord srv = (SRVRecord) respond(answers, weighted, Type.SRV)
+				.getSectionArray(Section.ANSWER)[0];
+		Assert.assertEquals(0, srv.getPriority());
+		Assert.assertEquals(50, srv.getWeight());
+		Assert.assertEquals(8080, srv.getPort());
+		Assert.assertEquals(Name.fromConstantString("10-1-2-3.order.service."),
+				srv.getTarget());
+		Assert.assertEquals(3, ((SRVRecord) respond(answers, pinned, Type.SRV)
+				.getSectionArray(Section.ANSWER)[0]).getPriority());
+
+		Assert.assertArrayEquals(answers.answerOf(weighted, DnsWireUtils.TYPE_A),
+				answers.targetAnswer("10-1-2-3", DnsWireUtils.TYPE_A));
+		Assert.assertNull(answers.targetAnswer("10-1-2-5", DnsWireUtils.TYPE_A));
+		Assert.assertTrue(answers.hasTarget("10-1-2-3"));
+		Assert.assertNull(answers.targetAnswer("10-1-2-3", DnsWireUtils.TYPE_AAAA));
+		Assert.assertFalse(answers.hasTarget("10-1-2-5"));
+	}
+
+}
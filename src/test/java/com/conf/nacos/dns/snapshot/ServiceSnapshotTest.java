@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.snapshot;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.conf.nacos.dns.pojo.InstanceRecord;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ServiceSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<InstanceRecord> records(int port) {
+		return Collections.singletonList(InstanceRecord.builder().ip("10.0.0.1")
+				.port(port).weight(1.0D).healthy(true).enabled(true)
+				.metadata(Collections.singletonMap("dns.srv.priority", "1")).build());
+	}
+
+	@Test
+	public void testLatestInstancesSurviveReopenAndCompaction() throws Exception {
+		final String file = new File(folder.getRoot(), "services.snapshot").getPath();
+		ServiceSnapshot snapshot = ServiceSnapshot.open(file, 1024);
+		snapshot.write("payment.", records(80));
+		// far more than the file holds, it is compacted on the way
+		for (int port = 1; port <= 100; port++) {
+			snapshot.write("order.", records(port));
+		}
+		snapshot.write("stock.", records(80));
+		snapshot.remove("stock.");
+		snapshot.close();
+
+		snapshot = ServiceSnapshot.open(file, 1024);
+		final Map<String, List<InstanceRecord>> services = snapshot.load();
+		snapshot.close();
+		Assert.assertEquals(2, services.size());
+		final InstanceRecord order = services.get("order.").get(0);
+		Assert.assertEquals(100, order.getPort());
+		Assert.assertArrayEquals(new byte[] { 10, 0, 0, 1 }, order.getIpv4Address());
+		Assert.assertTrue(order.isHealthy() && order.isEnabled());
+		Assert.assertEquals("1", order.getMetadata().get("dns.srv.priority"));
+		Assert.assertEquals(80, services.get("payment.").get(0).getPort());
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.transport;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.conf.nacos.dns.ListenConfig;
+import com.conf.nacos.dns.WorkerConfig;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+public class TcpReactorTest {
+
+	private static byte[] query(int id) {
+		Message message = Message.newQuery(Record.newRecord(
+				Name.fromConstantString("order.service."), Type.A, DClass.IN));
+		message.getHeader().setID(id);
+		return message.toWire();
+	}
+
+	private static void reply(Packet packet) {
+		ByteBuffer buffer = packet.getBuffer();
+		DnsWireUtils.toErrorResponse(buffer, DnsWireUtils.RCODE_NXDOMAIN);
+		try {
+			packet.getResponder().send(buffer, packet.getClient());
+		}
+		catch (IOException ex) {
+			throw new IllegalStateException(ex);
+		}
+		finally {
+			packet.release();
+		}
+	}
+
+	@Test
+	public void testPipelinedQueriesAnsweredOutOfOrder() throws Exception {
+		CountDownLatch firstAnswered = new CountDownLatch(1);
+		// id 1 waits on a worker until id 2 has been answered inline
+		WorkerPool workers = new WorkerPool(new WorkerConfig(), packet -> {
+			try {
+				firstAnswered.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			reply(packet);
+		});
+		InlineHandler inline = packet -> {
+			if (DnsWireUtils.getId(packet.getBuffer()) != 2) {
+				return false;
+			}
+			reply(packet);
+			firstAnswered.countDown();
+			return true;
+		};
+		TcpReactor reactor = new TcpReactor(new ListenConfig("127.0.0.1", 0), 4,
+				10_000L, 8, new PacketPool(8, 512), inline, workers);
+		Thread thread = new Thread(reactor, "tcp-reactor-test");
+		thread.start();
+		try (Socket socket = new Socket()) {
+			socket.connect(reactor.getLocalAddress(), 3000);
+			socket.setSoTimeout(5000);
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			for (int id = 1; id <= 2; id++) {
+				byte[] query = query(id);
+				out.writeShort(query.length);
+				out.write(query);
+			}
+			out.flush();
+
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			int[] order = new int[2];
+			Set<Integer> ids = new HashSet<>();
+			for (int i = 0; i < 2; i++) {
+				byte[] response = new byte[in.readUnsignedShort()];
+				in.readFully(response);
+				Message message = new Message(response);
+				Assert.assertEquals(Rcode.NXDOMAIN, message.getRcode());
+				order[i] = message.getHeader().getID();
+				ids.add(order[i]);
+			}
+			Assert.assertEquals(2, order[0]);
+			Assert.assertEquals(2, ids.size());
+		}
+		finally {
+			reactor.shutdown();
+			thread.join(3000);
+			workers.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.transport;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.conf.nacos.dns.ListenConfig;
+import com.conf.nacos.dns.WorkerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+public class WorkerPoolTest {
+
+	private static final SocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 5353);
+
+	private static byte[] query(int id) {
+		Message message = Message.newQuery(Record.newRecord(
+				Name.fromConstantString("order.service."), Type.A, DClass.IN));
+		message.getHeader().setID(id);
+		return message.toWire();
+	}
+
+	private static Packet packet(PacketPool pool, int id, Responder responder,
+			WorkerPool workers) {
+		Packet packet = pool.acquire();
+		packet.getBuffer().put(query(id)).flip();
+		packet.prepare(CLIENT, responder, workers);
+		return packet;
+	}
+
+	private static WorkerConfig config(long deadline) {
+		WorkerConfig config = new WorkerConfig();
+		config.setThreads(1);
+		config.setQueueCapacity(1);
+		config.setDeadline(deadline);
+		return config;
+	}
+
+	@Test
+	public void testFullQueueIsShedByPolicy() throws Exception {
+		final List<Message> replies = new ArrayList<>();
+		final Responder responder = new Responder() {
+			@Override
+			public void send(ByteBuffer response, SocketAddress client) throws IOException {
+				byte[] data = new byte[response.remaining()];
+				response.get(data);
+				replies.add(new Message(data));
+			}
+
+			@Override
+			public boolean isStream() {
+				return false;
+			}
+		};
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final WorkerPool workers = new WorkerPool(config(0L), packet -> {
+			running.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			packet.release();
+		});
+		final PacketPool pool = new PacketPool(4, 512);
+		try {
+			workers.dispatch(packet(pool, 1, responder, workers));
+			Assert.assertTrue(running.await(2, TimeUnit.SECONDS));
+			workers.dispatch(packet(pool, 2, responder, workers));
+			// one running, one queued, the third is refused on the caller's thread
+			workers.dispatch(packet(pool, 3, responder, workers));
+			Assert.assertEquals(1, workers.getShedCount());
+			Assert.assertEquals(1, replies.size());
+			Assert.assertEquals(3, replies.get(0).getHeader().getID());
+			Assert.assertEquals(Rcode.REFUSED, replies.get(0).getRcode());
+			Assert.assertEquals(2, pool.available());
+		}
+		finally {
+			release.countDown();
+			workers.shutdown();
+		}
+	}
+
+	@Test
+	public void testExpiredQueryIsDroppedUnprocessed() throws Exception {
+		final AtomicInteger handled = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final WorkerPool workers = new WorkerPool(config(50L), packet -> {
+			if (handled.incrementAndGet() == 1) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			packet.release();
+		});
+		final PacketPool pool = new PacketPool(4, 512);
+		final Responder responder = new Responder() {
+			@Override
+			public void send(ByteBuffer response, SocketAddress client) {
+			}
+
+			@Override
+			public boolean isStream() {
+				return false;
+			}
+		};
+		try {
+			workers.dispatch(packet(pool, 1, responder, workers));
+			workers.dispatch(packet(pool, 2, responder, workers));
+			// the second query waits behind the first past its deadline
+			Thread.sleep(200L);
+			release.countDown();
+			final long deadline = System.currentTimeMillis() + 2000L;
+			while (workers.getExpiredCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10L);
+			}
+			Assert.assertEquals(1, workers.getExpiredCount());
+			Assert.assertEquals(1, handled.get());
+			Assert.assertEquals(4, pool.available());
+		}
+		finally {
+			workers.shutdown();
+		}
+	}
+
+	@Test
+	public void testExhaustedPacketPoolIsShedByPolicy() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final WorkerPool workers = new WorkerPool(config(0L), packet -> {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			packet.release();
+		});
+		final UdpReactor reactor = new UdpReactor(0, new ListenConfig("127.0.0.1", 0),
+				false, new PacketPool(1, 512), packet -> false, workers);
+		final Thread thread = new Thread(reactor, "udp-reactor-test");
+		thread.start();
+		try (DatagramSocket client = new DatagramSocket()) {
+			client.connect(reactor.getLocalAddress());
+			client.setSoTimeout(2000);
+			// the only packet is held by the worker
+			byte[] first = query(1);
+			client.send(new DatagramPacket(first, first.length));
+			Thread.sleep(100L);
+			byte[] second = query(2);
+			client.send(new DatagramPacket(second, second.length));
+
+			DatagramPacket reply = new DatagramPacket(new byte[512], 512);
+			client.receive(reply);
+			Message response = new Message(
+					Arrays.copyOf(reply.getData(), reply.getLength()));
+			Assert.assertEquals(2, response.getHeader().getID());
+			Assert.assertEquals(Rcode.REFUSED, response.getRcode());
+			Assert.assertEquals(1, reactor.getDroppedCount());
+			Assert.assertEquals(1, workers.getShedCount());
+		}
+		finally {
+			release.countDown();
+			reactor.shutdown();
+			thread.join(3000L);
+			workers.shutdown();
+		}
+	}
+
+}
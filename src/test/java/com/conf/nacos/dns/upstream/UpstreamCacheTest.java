@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class UpstreamCacheTest {
+
+	private static final Name NAME = Name.fromConstantString("www.example.com.");
+
+	private static Message response(int rcode) {
+		Message message = new Message(0x1234);
+		message.getHeader().setRcode(rcode);
+		message.addRecord(Record.newRecord(NAME, Type.A, DClass.IN), Section.QUESTION);
+		return message;
+	}
+
+	private static ByteBuffer query(int id, String name) throws Exception {
+		Message query = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A,
+				DClass.IN));
+		query.getHeader().setID(id);
+		return ByteBuffer.wrap(query.toWire());
+	}
+
+	private static QuestionKey key(byte[] data) {
+		return QuestionKey.of(ByteBuffer.wrap(data));
+	}
+
+	@Test
+	public void testPositiveHitRewritesId() throws Exception {
+		Message message = response(Rcode.NOERROR);
+		message.addRecord(new ARecord(NAME, DClass.IN, 300,
+				InetAddress.getByName("10.0.0.1")), Section.ANSWER);
+		byte[] wire = message.toWire();
+
+		UpstreamCache cache = new UpstreamCache(16, 3600, 900);
+		Assert.assertNull(cache.get(key(wire), query(1, "www.example.com.")));
+		cache.put(key(wire), wire);
+
+		Message hit = new Message(
+				cache.get(key(wire), query(0x4321, "wWw.ExAmple.cOm.")));
+		Assert.assertEquals(0x4321, hit.getHeader().getID());
+		// the client's own case, e.g. randomized for 0x20
+		Assert.assertEquals("wWw.ExAmple.cOm.",
+				hit.getQuestion().getName().toString());
+		Assert.assertEquals(300, hit.getSectionArray(Section.ANSWER)[0].getTTL());
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testNegativeCachingNeedsSoa() throws Exception {
+		byte[] withoutSoa = response(Rcode.NXDOMAIN).toWire();
+		UpstreamCache cache = new UpstreamCache(16, 3600, 900);
+		cache.put(key(withoutSoa), withoutSoa);
+		Assert.assertEquals(0, cache.size());
+
+		Message message = response(Rcode.NXDOMAIN);
+		Name zone = Name.fromConstantString("example.com.");
+		message.addRecord(new SOARecord(zone, DClass.IN, 600, zone, zone, 1, 2, 3, 4, 60),
+				Section.AUTHORITY);
+		byte[] withSoa = message.toWire();
+		cache.put(key(withSoa), withSoa);
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(Rcode.NXDOMAIN,
+				new Message(cache.get(key(withSoa), query(1, "www.example.com."))).getHeader().getRcode());
+	}
+
+	@Test
+	public void testServerFailureIsNotCached() throws Exception {
+		byte[] wire = response(Rcode.SERVFAIL).toWire();
+		UpstreamCache cache = new UpstreamCache(16, 3600, 900);
+		cache.put(key(wire), wire);
+		Assert.assertNull(cache.get(key(wire), query(1, "www.example.com.")));
+	}
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.conf.nacos.dns.UpstreamConfig;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class UpstreamForwarderTest {
+
+	private DatagramChannel backend;
+
+	private Thread echo;
+
+	@Before
+	public void setUp() throws Exception {
+		backend = DatagramChannel.open();
+		backend.bind(new InetSocketAddress("127.0.0.1", 0));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		backend.close();
+		if (echo != null) {
+			echo.join(1000);
+		}
+	}
+
+	private static UpstreamConfig config(int sockets, long timeout) {
+		UpstreamConfig config = new UpstreamConfig();
+		config.setSockets(sockets);
+		config.setTimeout(timeout);
+		return config;
+	}
+
+	private static byte[] createDnsRequest() {
+		return new byte[] { (byte) 0x9a, (byte) 0xaa, 0x01, 0x00, 0x00, 0x01, 0x00, 0x00,
+				0x00, 0x00, 0x00, 0x00, 0x0a, 0x74, 0x69, 0x6d, 0x65, 0x2d, 0x6d, 0x61,
+				0x63, 0x6f, 0x73, 0x05, 0x61, 0x70, 0x70, 0x6c, 0x65, 0x03, 0x63, 0x6f,
+				0x6d, 0x00, 0x00, 0x01, 0x00, 0x01 };
+	}
+
+	@Test
+	public void testResponseMatchedByIdAndQuestion() throws Exception {
+		echo = new Thread(() -> {
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(512);
+				SocketAddress client = backend.receive(buffer);
+				buffer.flip();
+				// a stale answer for another id must be ignored
+				ByteBuffer stale = ByteBuffer.allocate(buffer.limit());
+				stale.put(buffer.duplicate()).flip();
+				stale.putShort(0, (short) (stale.getShort(0) + 1));
+				backend.send(stale, client);
+				buffer.put(2, (byte) 0x81);
+				backend.send(buffer, client);
+			}
+			catch (Exception ignore) {
+			}
+		});
+		echo.start();
+
+		UpstreamForwarder forwarder = new UpstreamForwarder(
+				Collections.singletonList((InetSocketAddress) backend.getLocalAddress()),
+				config(2, 1000L), 512);
+		try {
+			ByteBuffer query = ByteBuffer.wrap(createDnsRequest());
+			byte[] response = forwarder.forward(query).get(2, TimeUnit.SECONDS);
+			Assert.assertEquals(0x9aaa, DnsWireUtils.getId(ByteBuffer.wrap(response)));
+			Assert.assertEquals((byte) 0x81, response[2]);
+			Assert.assertEquals(0x9aaa, DnsWireUtils.getId(query));
+		}
+		finally {
+			forwarder.shutdown();
+		}
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		UpstreamForwarder forwarder = new UpstreamForwarder(
+				Collections.singletonList((InetSocketAddress) backend.getLocalAddress()),
+				config(1, 100L), 512);
+		try {
+			forwarder.forward(ByteBuffer.wrap(createDnsRequest())).get(2,
+					TimeUnit.SECONDS);
+			Assert.fail("query should time out");
+		}
+		catch (ExecutionException ex) {
+			Assert.assertTrue(ex.getCause() instanceof TimeoutException);
+		}
+		finally {
+			forwarder.shutdown();
+		}
+	}
+
+	@Test
+	public void testHedgeToNextBackend() throws Exception {
+		DatagramChannel silent = DatagramChannel.open();
+		silent.bind(new InetSocketAddress("127.0.0.1", 0));
+		echo = new Thread(() -> {
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(512);
+				SocketAddress client = backend.receive(buffer);
+				buffer.flip();
+				backend.send(buffer, client);
+			}
+			catch (Exception ignore) {
+			}
+		});
+		echo.start();
+
+		UpstreamForwarder forwarder = new UpstreamForwarder(
+				Arrays.asList((InetSocketAddress) silent.getLocalAddress(),
+						(InetSocketAddress) backend.getLocalAddress()),
+				config(1, 2000L), 512);
+		try {
+			byte[] response = forwarder.forward(ByteBuffer.wrap(createDnsRequest()))
+					.get(1500, TimeUnit.MILLISECONDS);
+			Assert.assertEquals(0x9aaa, DnsWireUtils.getId(ByteBuffer.wrap(response)));
+		}
+		finally {
+			forwarder.shutdown();
+			silent.close();
+		}
+	}
+
+	@Test
+	public void testOvertakenBackendIsCharged() {
+		Upstream upstream = new Upstream(new InetSocketAddress("127.0.0.1", 53), 2000L);
+		upstream.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+		double fast = upstream.getScore();
+		upstream.recordOvertaken(TimeUnit.MILLISECONDS.toNanos(500));
+		Assert.assertTrue(upstream.getScore() > fast);
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2020, Conf-Group
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.conf.nacos.dns.upstream;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.conf.nacos.dns.UpstreamConfig;
+import com.conf.nacos.dns.utils.DnsWireUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+public class UpstreamResolverTest {
+
+	private static ByteBuffer query(int id, String name) throws Exception {
+		Message query = Message.newQuery(Record.newRecord(Name.fromString(name), Type.A,
+				DClass.IN));
+		query.getHeader().setID(id);
+		return ByteBuffer.wrap(query.toWire());
+	}
+
+	@Test
+	public void testIdenticalQueriesShareOneExchange() throws Exception {
+		final DatagramChannel backend = DatagramChannel.open();
+		backend.bind(new InetSocketAddress("127.0.0.1", 0));
+		final AtomicInteger received = new AtomicInteger();
+		final CountDownLatch coalesced = new CountDownLatch(1);
+		final Thread echo = new Thread(() -> {
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(512);
+				SocketAddress client = backend.receive(buffer);
+				received.incrementAndGet();
+				// answer once the second query joined the first
+				coalesced.await(2, TimeUnit.SECONDS);
+				buffer.flip();
+				buffer.put(2, (byte) 0x81);
+				backend.send(buffer, client);
+				backend.configureBlocking(false);
+				Thread.sleep(200L);
+				buffer.clear();
+				if (backend.receive(buffer) != null) {
+					received.incrementAndGet();
+				}
+			}
+			catch (Exception ignore) {
+			}
+		});
+		echo.start();
+
+		final UpstreamConfig config = new UpstreamConfig();
+		config.setSockets(1);
+		config.setTimeout(2000L);
+		config.setCacheSize(0);
+		final UpstreamResolver resolver = new UpstreamResolver(
+				Collections.singletonList((InetSocketAddress) backend.getLocalAddress()),
+				config, 512);
+		try {
+			CompletableFuture<byte[]> first = resolver
+					.resolve(query(0x1111, "www.example.com."));
+			CompletableFuture<byte[]> second = resolver
+					.resolve(query(0x2222, "WwW.eXample.COM."));
+			Assert.assertEquals(1, resolver.getCoalescedCount());
+			coalesced.countDown();
+
+			Message firstResponse = new Message(first.get(2, TimeUnit.SECONDS));
+			Message secondResponse = new Message(second.get(2, TimeUnit.SECONDS));
+			Assert.assertEquals(0x1111, firstResponse.getHeader().getID());
+			Assert.assertEquals("www.example.com.",
+					firstResponse.getQuestion().getName().toString());
+			Assert.assertEquals(0x2222, secondResponse.getHeader().getID());
+			Assert.assertEquals("WwW.eXample.COM.",
+					secondResponse.getQuestion().getName().toString());
+			echo.join(2000L);
+			Assert.assertEquals(1, received.get());
+			Assert.assertEquals(0x1111, DnsWireUtils.getId(
+					ByteBuffer.wrap(first.get())));
+		}
+		finally {
+			resolver.shutdown();
+			backend.close();
+		}
+	}
+
+	@Test
+	public void testTruncatedResponseIsRetriedOverTcp() throws Exception {
+		final DatagramChannel backend = DatagramChannel.open();
+		backend.bind(new InetSocketAddress("127.0.0.1", 0));
+		final InetSocketAddress address = (InetSocketAddress) backend.getLocalAddress();
+		final ServerSocket stream = new ServerSocket();
+		stream.bind(address);
+		final Thread udp = new Thread(() -> {
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate(512);
+				for (int i = 0; i < 2; i++) {
+					buffer.clear();
+					SocketAddress client = backend.receive(buffer);
+					buffer.flip();
+					// QR and TC
+					buffer.put(2, (byte) 0x82);
+					backend.send(buffer, client);
+				}
+			}
+			catch (Exception ignore) {
+			}
+		});
+		final Thread tcp = new Thread(() -> {
+			try (Socket socket = stream.accept()) {
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+				byte[] query = new byte[in.readUnsignedShort()];
+				in.readFully(query);
+				query[2] = (byte) 0x80;
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				out.writeShort(query.length);
+				out.write(query);
+				out.flush();
+			}
+			catch (Exception ignore) {
+			}
+		});
+		udp.start();
+		tcp.start();
+
+		final UpstreamConfig config = new UpstreamConfig();
+		config.setSockets(1);
+		config.setTimeout(2000L);
+		config.setCacheSize(0);
+		final UpstreamResolver resolver = new UpstreamResolver(
+				Collections.singletonList(address), config, 512);
+		try {
+			Message overUdp = new Message(resolver.resolve(query(0x1111, "big.example."))
+					.get(2, TimeUnit.SECONDS));
+			Assert.assertTrue(overUdp.getHeader().getFlag(Flags.TC));
+
+			Message overTcp = new Message(resolver
+					.resolve(query(0x2222, "big.example."), true).get(3, TimeUnit.SECONDS));
+			Assert.assertEquals(0x2222, overTcp.getHeader().getID());
+			Assert.assertFalse(overTcp.getHeader().getFlag(Flags.TC));
+		}
+		finally {
+			resolver.shutdown();
+			backend.close();
+			stream.close();
+		}
+	}
+
+}